@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import edu.temple.cla.policydb.dbutilities.DBUtil;
+import java.io.ByteArrayInputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the per-row and per-cell conversion methods. The rows come
+ * from a generated workbook and the column metadata from an H2 table with
+ * the same columns. Each operation converts one row or one value.
+ *
+ * @author Paul Wolfgang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionBenchmark {
+
+    private static final int SAMPLE_SIZE = 1024;
+
+    @Param({"10", "40"})
+    public int columns;
+
+    @Param({"20", "200"})
+    public int textLength;
+
+    private DoUpload doUpload;
+    private List<ColumnMetaData> filteredColumnList;
+    private final List<SheetRow> rows = new ArrayList<>();
+    private final String[] excelDates = new String[SAMPLE_SIZE];
+    private final String[] numbers = new String[SAMPLE_SIZE];
+    private final String[] texts = new String[SAMPLE_SIZE];
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        WorkbookGenerator generator
+                = new WorkbookGenerator(SAMPLE_SIZE, columns, textLength);
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:conversion;MODE=MySQL");
+        try (Connection conn = dataSource.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(generator.createTableStatement("BENCH"));
+            doUpload = new DoUpload(dataSource);
+            new WorkbookSheetReader().read(
+                    new ByteArrayInputStream(generator.generate("Data")),
+                    "Data", rows::add);
+            doUpload.getSpreadsheetColumnNames(rows.remove(0));
+            try (ResultSet rs = conn.getMetaData().getColumns(null, null, "BENCH", null)) {
+                filteredColumnList = doUpload.filterColumnList(
+                        ColumnMetaData.getColumnMetaDataList(rs));
+            }
+            if (filteredColumnList.size() != columns) {
+                throw new IllegalStateException("Only " + filteredColumnList.size()
+                        + " of " + columns + " columns match the table");
+            }
+        }
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            excelDates[i] = Double.toString(25569 + generator.epochDay(i, 0) + 0.5);
+            numbers[i] = Double.toString(generator.decimal(i, 3));
+            texts[i] = generator.text(i, 0) + (i % 8 == 0 ? "'\\" : "");
+        }
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (SAMPLE_SIZE - 1);
+        return next;
+    }
+
+    @Benchmark
+    public Optional<String> buildValuesList() {
+        return doUpload.buildValuesList(rows.get(nextIndex()), filteredColumnList);
+    }
+
+    @Benchmark
+    public Optional<ConvertedRow> convertRow() {
+        return doUpload.convertRow(rows.get(nextIndex()), filteredColumnList);
+    }
+
+    @Benchmark
+    public String excelDateToDate() {
+        return DoUpload.excelDateToDate(excelDates[nextIndex()]);
+    }
+
+    @Benchmark
+    public String removeFraction() {
+        return DoUpload.removeFraction(numbers[nextIndex()]);
+    }
+
+    @Benchmark
+    public CharSequence doubleQuotes() {
+        return DBUtil.doubleQuotes(texts[nextIndex()]);
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.ByteArrayInputStream;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end benchmark of DoUpload.run loading a generated workbook into an
+ * in-memory H2 database in MySQL mode. The table is emptied before each
+ * invocation. LOAD_DATA is not included since it requires MySQL Connector/J.
+ *
+ * @author Paul Wolfgang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class UploadBenchmark {
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Param({"10", "40"})
+    public int columns;
+
+    @Param({"50"})
+    public int textLength;
+
+    @Param({"false", "true"})
+    public boolean streaming;
+
+    @Param({"INSERT", "BATCH"})
+    public WriteMode writeMode;
+
+    private JdbcDataSource dataSource;
+    private Connection keepAlive;
+    private byte[] workbook;
+
+    @Setup
+    public void setup() throws Exception {
+        WorkbookGenerator generator = new WorkbookGenerator(rows, columns, textLength);
+        workbook = generator.generate("Data");
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:upload;MODE=MySQL");
+        keepAlive = dataSource.getConnection();
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.executeUpdate(generator.createTableStatement("BENCH"));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyTable() throws Exception {
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.executeUpdate("TRUNCATE TABLE BENCH");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        keepAlive.close();
+    }
+
+    /**
+     * Run the upload. An upload that fails or does not write every row ends
+     * the benchmark, so that it is not recorded as a fast result.
+     *
+     * @return The summary of the upload.
+     */
+    @Benchmark
+    public UploadSummary run() {
+        DoUpload doUpload = new DoUpload(dataSource);
+        doUpload.setStreaming(streaming);
+        doUpload.setWriteMode(writeMode);
+        UploadSummary summary
+                = doUpload.run(new ByteArrayInputStream(workbook), "Data", "BENCH");
+        if (!summary.isSuccessful() || summary.getRowsWritten() != rows) {
+            throw new IllegalStateException("Upload failed: " + summary,
+                    summary.getError());
+        }
+        return summary;
+    }
+
+}
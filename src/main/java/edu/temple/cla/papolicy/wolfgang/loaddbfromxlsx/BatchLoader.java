@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import javax.sql.DataSource;
+import org.apache.log4j.Logger;
+
+/**
+ * Loads a batch of sheets, listed in a manifest, concurrently in one JVM.
+ * Each job is run by its own DoUpload on a fixed size thread pool, and all
+ * jobs share one DataSource, normally a ConnectionPool, and therefore the
+ * TableMetadataCache entries of their tables. A job that fails does not stop
+ * the others; its result records the error.
+ *
+ * @author Paul Wolfgang
+ */
+public class BatchLoader {
+
+    private static final Logger LOGGER = Logger.getLogger(BatchLoader.class);
+
+    /**
+     * The number of jobs run at once if no other number is given.
+     */
+    public static final int DEFAULT_JOBS = 4;
+
+    private final DataSource dataSource;
+    private final int threads;
+    private final Consumer<DoUpload> configuration;
+
+    /**
+     * Constructor.
+     *
+     * @param dataSource The DataSource shared by the jobs.
+     * @param threads The number of jobs run at once.
+     * @param configuration Applies the settings to the DoUpload of each job,
+     * after its input format has been set from the workbook name.
+     */
+    public BatchLoader(DataSource dataSource, int threads,
+            Consumer<DoUpload> configuration) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.dataSource = dataSource;
+        this.threads = threads;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Read a manifest. Each line lists a workbook, the sheet and the table,
+     * separated by tabs or, if the line contains no tab, by commas. Blank
+     * lines and lines beginning with # are ignored. The sheet may be empty
+     * for a CSV or TSV file. Relative workbook paths are resolved against the
+     * directory containing the manifest.
+     *
+     * @param manifest The manifest file.
+     * @return The jobs in the order listed.
+     * @throws IOException If the manifest cannot be read or a line does not
+     * contain three fields.
+     */
+    public static List<Job> readManifest(Path manifest) throws IOException {
+        Path directory = manifest.toAbsolutePath().getParent();
+        List<Job> jobs = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(line.indexOf('\t') != -1 ? "\t" : ",", -1);
+            if (fields.length != 3 || fields[0].trim().isEmpty()
+                    || fields[2].trim().isEmpty()) {
+                throw new IOException("Line " + lineNumber + " of " + manifest
+                        + " does not contain a workbook, sheet and table");
+            }
+            Path workbook = directory.resolve(fields[0].trim());
+            jobs.add(new Job(workbook, fields[1].trim(), fields[2].trim()));
+        }
+        return jobs;
+    }
+
+    /**
+     * Run the jobs and wait for them to complete.
+     *
+     * @param jobs The jobs.
+     * @return The result of each job, in the same order as the jobs.
+     */
+    public List<JobResult> run(List<Job> jobs) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<CompletableFuture<JobResult>> futures = new ArrayList<>();
+            for (Job job : jobs) {
+                futures.add(CompletableFuture.supplyAsync(() -> runJob(job), executor));
+            }
+            List<JobResult> results = new ArrayList<>();
+            for (CompletableFuture<JobResult> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private JobResult runJob(Job job) {
+        long startNanos = System.nanoTime();
+        try {
+            DoUpload doUpload = new DoUpload(dataSource);
+            doUpload.setInputFormat(InputFormat.fromFileName(
+                    job.getWorkbook().getFileName().toString()));
+            configuration.accept(doUpload);
+            try (InputStream input = new FileInputStream(job.getWorkbook().toFile())) {
+                UploadSummary summary = doUpload.run(input, job.getSheet(),
+                        job.getTable());
+                return new JobResult(job, summary, summary.getError(),
+                        System.nanoTime() - startNanos);
+            }
+        } catch (Exception ex) {
+            LOGGER.error("Unable to run " + job, ex);
+            return new JobResult(job, null, ex, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Format the results as a table with one line per job and a total line.
+     *
+     * @param results The results of run.
+     * @param elapsedNanos The time taken to run the batch.
+     * @return The report.
+     */
+    public static String report(List<JobResult> results, long elapsedNanos) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-6s %12s %10s %12s  %s%n",
+                "Status", "Rows", "Seconds", "Rows/s", "Job"));
+        long totalRows = 0;
+        int failed = 0;
+        for (JobResult result : results) {
+            long rows = result.getRowsWritten();
+            double seconds = result.getElapsedNanos() / 1.0e9;
+            report.append(String.format("%-6s %12d %10.2f %12.0f  %s",
+                    result.isSuccessful() ? "OK" : "FAILED", rows, seconds,
+                    seconds == 0.0 ? 0.0 : rows / seconds, result.getJob()));
+            if (!result.isSuccessful()) {
+                failed++;
+                report.append(": ").append(result.getError());
+            }
+            report.append(String.format("%n"));
+            totalRows += rows;
+        }
+        double seconds = elapsedNanos / 1.0e9;
+        report.append(String.format("%d jobs, %d failed, %d rows in %.2f seconds%n",
+                results.size(), failed, totalRows, seconds));
+        return report.toString();
+    }
+
+    /**
+     * One entry of the manifest.
+     */
+    public static class Job {
+
+        private final Path workbook;
+        private final String sheet;
+        private final String table;
+
+        /**
+         * Constructor.
+         *
+         * @param workbook The xlsx, CSV or TSV file.
+         * @param sheet The name of the sheet.
+         * @param table The name of the destination table.
+         */
+        public Job(Path workbook, String sheet, String table) {
+            this.workbook = workbook;
+            this.sheet = sheet;
+            this.table = table;
+        }
+
+        public Path getWorkbook() {
+            return workbook;
+        }
+
+        public String getSheet() {
+            return sheet;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        @Override
+        public String toString() {
+            return workbook.getFileName() + (sheet.isEmpty() ? "" : "[" + sheet + "]")
+                    + " -> " + table;
+        }
+    }
+
+    /**
+     * The outcome of one job.
+     */
+    public static class JobResult {
+
+        private final Job job;
+        private final UploadSummary summary;
+        private final Exception error;
+        private final long elapsedNanos;
+
+        JobResult(Job job, UploadSummary summary, Exception error,
+                long elapsedNanos) {
+            this.job = job;
+            this.summary = summary;
+            this.error = error;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public Job getJob() {
+            return job;
+        }
+
+        /**
+         * Get the summary of the upload.
+         *
+         * @return The summary, or null if the workbook could not be opened.
+         */
+        public UploadSummary getSummary() {
+            return summary;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+
+        public long getRowsWritten() {
+            return summary != null ? summary.getRowsWritten() : 0;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+
+}
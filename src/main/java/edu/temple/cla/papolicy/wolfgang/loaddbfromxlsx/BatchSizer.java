@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.apache.log4j.Logger;
+
+/**
+ * Chooses the size of each batch sent by a RowWriter, measured in encoded
+ * bytes. The size starts at an initial value and is limited by the server's
+ * max_allowed_packet. After every few batches the throughput in bytes per
+ * second is compared with that of the previous few: the size keeps moving in
+ * the same direction, or stays at its limit, unless throughput gets worse,
+ * when the direction is reversed. It thus settles near the size at which the
+ * round trips are most efficient. Changes to the size are logged.
+ *
+ * @author Paul Wolfgang
+ */
+public class BatchSizer {
+
+    private static final Logger LOGGER = Logger.getLogger(BatchSizer.class);
+
+    /**
+     * The max_allowed_packet assumed if the server's value cannot be read.
+     * This is the MySQL 5.7 default.
+     */
+    static final long DEFAULT_MAX_ALLOWED_PACKET = 4L * 1024 * 1024;
+
+    /**
+     * Space reserved in each packet for the packet header and the text of the
+     * statement that precedes the values.
+     */
+    private static final long PACKET_MARGIN = 64 * 1024;
+
+    /**
+     * The smallest batch size, in bytes.
+     */
+    static final long MIN_BATCH_BYTES = 64 * 1024;
+
+    private static final int BATCHES_PER_STEP = 3;
+    private static final double STEP = 1.5;
+    private static final double TOLERANCE = 0.05;
+
+    private final String name;
+    private final long minBytes;
+    private final long maxBytes;
+    private long targetBytes;
+    private boolean growing = true;
+    private double lastThroughput;
+    private int batchesInStep;
+    private long bytesInStep;
+    private long nanosInStep;
+
+    /**
+     * Constructor.
+     *
+     * @param name The name of the writer, used in log messages.
+     * @param initialBytes The initial batch size.
+     * @param minBytes The smallest batch size.
+     * @param maxBytes The largest batch size.
+     */
+    public BatchSizer(String name, long initialBytes, long minBytes, long maxBytes) {
+        this.name = name;
+        this.minBytes = Math.min(minBytes, maxBytes);
+        this.maxBytes = maxBytes;
+        this.targetBytes = Math.max(this.minBytes, Math.min(initialBytes, maxBytes));
+        LOGGER.info(name + " batch size " + targetBytes + " bytes (limit "
+                + maxBytes + " bytes)");
+    }
+
+    /**
+     * Create a BatchSizer for statements that must fit in a single packet.
+     *
+     * @param name The name of the writer, used in log messages.
+     * @param conn The database connection.
+     * @param initialBytes The initial batch size.
+     * @return The BatchSizer.
+     */
+    public static BatchSizer forStatements(String name, Connection conn,
+            long initialBytes) {
+        long maxBytes = Math.max(getMaxAllowedPacket(conn) - PACKET_MARGIN,
+                MIN_BATCH_BYTES);
+        return new BatchSizer(name, initialBytes, MIN_BATCH_BYTES, maxBytes);
+    }
+
+    /**
+     * Read the server's max_allowed_packet.
+     *
+     * @param conn The database connection.
+     * @return The value of max_allowed_packet, or DEFAULT_MAX_ALLOWED_PACKET
+     * if the server does not have this variable.
+     */
+    static long getMaxAllowedPacket(Connection conn) {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT @@max_allowed_packet")) {
+            if (rs.next()) {
+                return rs.getLong(1);
+            }
+        } catch (SQLException sqlex) {
+            LOGGER.debug("Unable to read max_allowed_packet: " + sqlex);
+        }
+        return DEFAULT_MAX_ALLOWED_PACKET;
+    }
+
+    /**
+     * Get the current batch size.
+     *
+     * @return The batch size in bytes.
+     */
+    public long getTargetBytes() {
+        return targetBytes;
+    }
+
+    /**
+     * Determine whether a row can be added to a batch without exceeding the
+     * batch size. A row is always accepted by an empty batch.
+     *
+     * @param batchBytes The size of the batch.
+     * @param rowBytes The size of the row.
+     * @return true if the row fits.
+     */
+    public boolean fits(long batchBytes, long rowBytes) {
+        return batchBytes == 0 || batchBytes + rowBytes <= targetBytes;
+    }
+
+    /**
+     * Determine whether a batch has reached the batch size.
+     *
+     * @param batchBytes The size of the batch.
+     * @return true if the batch should be sent.
+     */
+    public boolean isFull(long batchBytes) {
+        return batchBytes >= targetBytes;
+    }
+
+    /**
+     * Record the time taken to send a batch and adjust the batch size.
+     * Batches smaller than half the batch size, such as the last one, are
+     * not used since their time is mostly fixed overhead.
+     *
+     * @param batchBytes The size of the batch.
+     * @param nanos The time to execute the batch in nanoseconds.
+     */
+    public void batchSent(long batchBytes, long nanos) {
+        if (batchBytes < targetBytes / 2 || nanos <= 0) {
+            return;
+        }
+        bytesInStep += batchBytes;
+        nanosInStep += nanos;
+        if (++batchesInStep < BATCHES_PER_STEP) {
+            return;
+        }
+        double throughput = (double) bytesInStep / nanosInStep;
+        batchesInStep = 0;
+        bytesInStep = 0;
+        nanosInStep = 0;
+        if (lastThroughput > 0 && throughput < lastThroughput * (1 - TOLERANCE)) {
+            growing = !growing;
+        }
+        lastThroughput = throughput;
+        long next = growing ? (long) (targetBytes * STEP) : (long) (targetBytes / STEP);
+        next = Math.max(minBytes, Math.min(next, maxBytes));
+        if (next != targetBytes) {
+            LOGGER.info(String.format("%s batch size %d bytes (%.1f MB/s)",
+                    name, next, throughput * 1.0e9 / (1024 * 1024)));
+            targetBytes = next;
+        }
+    }
+
+    /**
+     * Compute the number of bytes in the UTF-8 encoding of a string.
+     *
+     * @param s The string.
+     * @return The encoded length.
+     */
+    public static int utf8Length(CharSequence s) {
+        int length = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x800) {
+                length += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+}
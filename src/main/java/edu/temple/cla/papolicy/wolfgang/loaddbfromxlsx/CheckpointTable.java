@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The side table that records how far a resumable load has progressed. There
+ * is one row per destination table holding the sheet name, the SHA-256 hash
+ * of the workbook, and the index of the last spreadsheet row committed. The
+ * checkpoint is updated in the same transaction as the rows it covers, so
+ * with a transactional storage engine it always matches the table contents.
+ * The row is deleted when the load completes. The sheet name of a CSV or TSV
+ * file, which is null, is recorded as an empty string.
+ *
+ * @author Paul Wolfgang
+ */
+public class CheckpointTable {
+
+    /**
+     * The name of the checkpoint table.
+     */
+    public static final String TABLE_NAME = "upload_checkpoint";
+
+    private final Connection conn;
+
+    /**
+     * Constructor.
+     *
+     * @param conn The connection used for the load.
+     */
+    public CheckpointTable(Connection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * Create the checkpoint table if it does not exist. Since DDL statements
+     * commit the current transaction in MySQL, this must be called before the
+     * load starts.
+     *
+     * @throws SQLException If the table cannot be created.
+     */
+    public void create() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
+                    + "table_name VARCHAR(128) NOT NULL, "
+                    + "sheet_name VARCHAR(128) NOT NULL, "
+                    + "workbook_hash CHAR(64) NOT NULL, "
+                    + "last_row INT NOT NULL, "
+                    + "PRIMARY KEY (table_name))");
+        }
+    }
+
+    /**
+     * Find the row at which to resume a load.
+     *
+     * @param tableName Name of the destination table.
+     * @param sheetName Worksheet name containing the data, or null.
+     * @param workbookHash The hash of the workbook being loaded.
+     * @return The index of the last row committed, or 0 if there is no
+     * checkpoint for the table.
+     * @throws SQLException If the table has an incomplete load of a different
+     * workbook or sheet, or the checkpoint cannot be read.
+     */
+    public int find(String tableName, String sheetName, String workbookHash)
+            throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT sheet_name, "
+                + "workbook_hash, last_row FROM " + TABLE_NAME + " WHERE table_name = ?")) {
+            stmt.setString(1, tableName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return 0;
+                }
+                if (!sheetLabel(sheetName).equals(rs.getString(1))
+                        || !workbookHash.equals(rs.getString(2))) {
+                    throw new SQLException("Table " + tableName
+                            + " has an incomplete load of sheet " + rs.getString(1)
+                            + " from a different workbook. Delete its row from "
+                            + TABLE_NAME + " to start a new load.");
+                }
+                return rs.getInt(3);
+            }
+        }
+    }
+
+    /**
+     * Record the last row committed. This is not committed until the caller
+     * commits the rows it covers.
+     *
+     * @param tableName Name of the destination table.
+     * @param sheetName Worksheet name containing the data, or null.
+     * @param workbookHash The hash of the workbook being loaded.
+     * @param lastRow The index of the last row written.
+     * @throws SQLException If the checkpoint cannot be written.
+     */
+    public void save(String tableName, String sheetName, String workbookHash,
+            int lastRow) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("UPDATE " + TABLE_NAME
+                + " SET sheet_name = ?, workbook_hash = ?, last_row = ?"
+                + " WHERE table_name = ?")) {
+            stmt.setString(1, sheetLabel(sheetName));
+            stmt.setString(2, workbookHash);
+            stmt.setInt(3, lastRow);
+            stmt.setString(4, tableName);
+            if (stmt.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO " + TABLE_NAME
+                + " (table_name, sheet_name, workbook_hash, last_row) VALUES (?, ?, ?, ?)")) {
+            stmt.setString(1, tableName);
+            stmt.setString(2, sheetLabel(sheetName));
+            stmt.setString(3, workbookHash);
+            stmt.setInt(4, lastRow);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static String sheetLabel(String sheetName) {
+        return sheetName == null ? "" : sheetName;
+    }
+
+    /**
+     * Remove the checkpoint when the load is complete.
+     *
+     * @param tableName Name of the destination table.
+     * @throws SQLException If the checkpoint cannot be deleted.
+     */
+    public void delete(String tableName) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM "
+                + TABLE_NAME + " WHERE table_name = ?")) {
+            stmt.setString(1, tableName);
+            stmt.executeUpdate();
+        }
+    }
+
+}
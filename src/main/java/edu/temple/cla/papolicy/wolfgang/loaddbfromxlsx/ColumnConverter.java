@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import edu.temple.cla.policydb.dbutilities.DBUtil;
+
+/**
+ * Converts the value of one spreadsheet column to the type of its database
+ * column and stores it in a ConvertedRow. A converter is created for each
+ * mapped column when the column list is filtered, so that converting a row
+ * needs no name lookups or switch on the column type.
+ *
+ * @author Paul Wolfgang
+ */
+public abstract class ColumnConverter {
+
+    private final int index;
+
+    /**
+     * Constructor.
+     *
+     * @param index The position of the column in the filtered column list.
+     */
+    protected ColumnConverter(int index) {
+        this.index = index;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Convert a value and store it in the row.
+     *
+     * @param value The cell value. This is not null, empty, or "null".
+     * @param row The row being built.
+     * @return false if the row must be skipped because the column type is not
+     * supported.
+     */
+    public abstract boolean convert(String value, ConvertedRow row);
+
+    /**
+     * Convert the value of a NUMERIC cell and store it in the row. Unless
+     * overridden the value is converted as if it were a string containing the
+     * value rounded to an integer.
+     *
+     * @param value The cell value.
+     * @param row The row being built.
+     * @return false if the row must be skipped because the column type is not
+     * supported.
+     */
+    public boolean convert(double value, ConvertedRow row) {
+        return convert(formatNumber(value), row);
+    }
+
+    /**
+     * Convert the value of a BOOLEAN cell and store it in the row. Unless
+     * overridden the value is converted as the string "true" or "false".
+     *
+     * @param value The cell value.
+     * @param row The row being built.
+     * @return false if the row must be skipped because the column type is not
+     * supported.
+     */
+    public boolean convert(boolean value, ConvertedRow row) {
+        return convert(Boolean.toString(value), row);
+    }
+
+    /**
+     * Format a number rounded to an integer. This gives the same result as
+     * String.format("%.0f", value) but avoids the Formatter for the usual case
+     * of a value that is already an integer.
+     *
+     * @param value The number.
+     * @return The formatted number.
+     */
+    static String formatNumber(double value) {
+        if (Math.abs(value) < 1.0e15 && value == (long) value) {
+            return Long.toString((long) value);
+        }
+        return String.format("%.0f", value);
+    }
+
+    /**
+     * Round a number to the nearest integer with ties rounded away from zero,
+     * as String.format("%.0f", value) does.
+     *
+     * @param value The number.
+     * @return The rounded value.
+     */
+    static long roundHalfUp(double value) {
+        double truncated = value < 0 ? Math.ceil(value) : Math.floor(value);
+        if (Math.abs(value - truncated) >= 0.5) {
+            return (long) truncated + (value < 0 ? -1 : 1);
+        }
+        return (long) truncated;
+    }
+
+    /**
+     * Create the converter for a database column.
+     *
+     * @param metaData The column metadata.
+     * @param index The position of the column in the filtered column list.
+     * @return The converter.
+     */
+    public static ColumnConverter forColumn(ColumnMetaData metaData, int index) {
+        switch (metaData.getDataType()) {
+            case java.sql.Types.BINARY:
+            case java.sql.Types.VARBINARY:
+            case java.sql.Types.CHAR:
+            case java.sql.Types.VARCHAR:
+            case java.sql.Types.LONGVARCHAR:
+                return new StringConverter(index);
+            case java.sql.Types.REAL:
+            case java.sql.Types.DOUBLE:
+                return new DoubleConverter(index);
+            case java.sql.Types.BIT:
+            case java.sql.Types.TINYINT:
+            case java.sql.Types.SMALLINT:
+            case java.sql.Types.INTEGER:
+                return new IntegerConverter(index);
+            case java.sql.Types.TIMESTAMP:
+            case java.sql.Types.DATE:
+                return new DateConverter(index);
+            default:
+                return new UnsupportedConverter(index);
+        }
+    }
+
+    static class StringConverter extends ColumnConverter {
+
+        StringConverter(int index) {
+            super(index);
+        }
+
+        @Override
+        public boolean convert(String value, ConvertedRow row) {
+            row.setObject(getIndex(), value);
+            return true;
+        }
+    }
+
+    static class DoubleConverter extends ColumnConverter {
+
+        DoubleConverter(int index) {
+            super(index);
+        }
+
+        @Override
+        public boolean convert(String value, ConvertedRow row) {
+            row.setDouble(getIndex(),
+                    Double.parseDouble(DBUtil.removeCommas(value).toString()));
+            return true;
+        }
+
+        @Override
+        public boolean convert(double value, ConvertedRow row) {
+            row.setDouble(getIndex(), value);
+            return true;
+        }
+
+        @Override
+        public boolean convert(boolean value, ConvertedRow row) {
+            row.setDouble(getIndex(), value ? 1.0 : 0.0);
+            return true;
+        }
+    }
+
+    /**
+     * Converter for integer columns. BOOLEAN cells are converted to 1 or 0.
+     * NUMERIC cells, and numbers with a fraction written as text, are
+     * rounded, so a CSV file loads the same values as a workbook.
+     */
+    static class IntegerConverter extends ColumnConverter {
+
+        IntegerConverter(int index) {
+            super(index);
+        }
+
+        @Override
+        public boolean convert(String value, ConvertedRow row) {
+            switch (value) {
+                case "true":
+                    row.setLong(getIndex(), 1L);
+                    break;
+                case "false":
+                    row.setLong(getIndex(), 0L);
+                    break;
+                default:
+                    row.setLong(getIndex(), parseInteger(value));
+                    break;
+            }
+            return true;
+        }
+
+        /**
+         * Parse an integer written as text. A number with a fraction or an
+         * exponent is rounded in the same way as a NUMERIC cell.
+         *
+         * @param value The text.
+         * @return The integer.
+         * @throws NumberFormatException If the text is not a finite number.
+         */
+        static long parseInteger(String value) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException ex) {
+                double number;
+                try {
+                    number = Double.parseDouble(value);
+                } catch (NumberFormatException nfex) {
+                    number = Double.NaN;
+                }
+                if (Double.isNaN(number) || Double.isInfinite(number)) {
+                    throw new NumberFormatException("Not an integer: " + value);
+                }
+                return roundHalfUp(number);
+            }
+        }
+
+        @Override
+        public boolean convert(double value, ConvertedRow row) {
+            row.setLong(getIndex(), roundHalfUp(value));
+            return true;
+        }
+
+        @Override
+        public boolean convert(boolean value, ConvertedRow row) {
+            row.setLong(getIndex(), value ? 1L : 0L);
+            return true;
+        }
+    }
+
+    /**
+     * Converter for date columns. The value is an Excel date serial number,
+     * or a date written as text, and is stored as an epoch day.
+     */
+    static class DateConverter extends ColumnConverter {
+
+        DateConverter(int index) {
+            super(index);
+        }
+
+        /**
+         * Convert a date held as text. The text is either an Excel date serial
+         * number or, as in a CSV file, a date in one of the forms accepted by
+         * DoUpload.textDateToEpochDay.
+         */
+        @Override
+        public boolean convert(String value, ConvertedRow row) {
+            if (value.indexOf('-') > 0 || value.indexOf('/') > 0) {
+                row.setLong(getIndex(), DoUpload.textDateToEpochDay(value));
+                return true;
+            }
+            return convert(Double.parseDouble(value), row);
+        }
+
+        @Override
+        public boolean convert(double value, ConvertedRow row) {
+            row.setLong(getIndex(), DoUpload.excelDateToEpochDay(value));
+            return true;
+        }
+    }
+
+    /**
+     * Converter for a column whose type is not supported. A row with a value
+     * in such a column is skipped.
+     */
+    static class UnsupportedConverter extends ColumnConverter {
+
+        UnsupportedConverter(int index) {
+            super(index);
+        }
+
+        @Override
+        public boolean convert(String value, ConvertedRow row) {
+            return false;
+        }
+
+        @Override
+        public boolean convert(double value, ConvertedRow row) {
+            return false;
+        }
+
+        @Override
+        public boolean convert(boolean value, ConvertedRow row) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The compiled mapping from spreadsheet columns to database columns. For each
+ * spreadsheet column index it holds the ColumnConverter for the database
+ * column that the spreadsheet column is loaded into, or null if the
+ * spreadsheet column has no corresponding database column.
+ *
+ * @author Paul Wolfgang
+ */
+public class ColumnPlan {
+
+    private final List<ColumnMetaData> columns;
+    private final ColumnConverter[] converters;
+
+    private ColumnPlan(List<ColumnMetaData> columns, ColumnConverter[] converters) {
+        this.columns = columns;
+        this.converters = converters;
+    }
+
+    /**
+     * Compile the plan.
+     *
+     * @param spreadsheetColumnNames The spreadsheet column names by column
+     * index.
+     * @param databaseToSpreadsheetNames Map from database column name to
+     * spreadsheet column name.
+     * @param columns The filtered list of database columns being loaded.
+     * @return The compiled plan.
+     */
+    public static ColumnPlan compile(List<String> spreadsheetColumnNames,
+            Map<String, String> databaseToSpreadsheetNames,
+            List<ColumnMetaData> columns) {
+        ColumnConverter[] converters = new ColumnConverter[spreadsheetColumnNames.size()];
+        for (int index = 0; index < columns.size(); index++) {
+            ColumnMetaData metaData = columns.get(index);
+            String spreadsheetColumnName
+                    = databaseToSpreadsheetNames.get(metaData.getColumnName());
+            for (int columnIndex = 0; columnIndex < converters.length; columnIndex++) {
+                if (spreadsheetColumnNames.get(columnIndex).equals(spreadsheetColumnName)) {
+                    converters[columnIndex] = ColumnConverter.forColumn(metaData, index);
+                }
+            }
+        }
+        return new ColumnPlan(columns, converters);
+    }
+
+    /**
+     * Get the database columns being loaded. The converted values of a row
+     * are in the same order.
+     *
+     * @return The filtered list of database columns.
+     */
+    public List<ColumnMetaData> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Get the converter for a spreadsheet column.
+     *
+     * @param columnIndex The zero based spreadsheet column index.
+     * @return The converter, or null if the column is not loaded.
+     */
+    public ColumnConverter getConverter(int columnIndex) {
+        return columnIndex < converters.length ? converters[columnIndex] : null;
+    }
+
+    /**
+     * Determine whether a spreadsheet column is loaded. This is the projection
+     * that lets the readers skip the cells of the other columns.
+     *
+     * @param columnIndex The zero based spreadsheet column index.
+     * @return true if the column has a corresponding database column.
+     */
+    public boolean isLoaded(int columnIndex) {
+        return getConverter(columnIndex) != null;
+    }
+
+}
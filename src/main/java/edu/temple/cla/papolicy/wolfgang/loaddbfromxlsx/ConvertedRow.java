@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+/**
+ * The values of one spreadsheet row converted to the types of the database
+ * columns. Each value corresponds to the column at the same position in the
+ * filtered column list. Integer, floating point and date values are held in a
+ * primitive array so that they are not boxed; dates are held as the number of
+ * days since 1970-01-01. String values are held as objects.
+ *
+ * @author Paul Wolfgang
+ */
+public class ConvertedRow {
+
+    /**
+     * Marks a position whose value is held in the numbers array.
+     */
+    private static final Object NUMBER = new Object();
+
+    private final int rowNum;
+    private final Object[] objects;
+    private final long[] numbers;
+
+    /**
+     * Constructor. All values are initially NULL.
+     *
+     * @param rowNum The zero based index of the spreadsheet row.
+     * @param size The number of columns.
+     */
+    public ConvertedRow(int rowNum, int size) {
+        this.rowNum = rowNum;
+        this.objects = new Object[size];
+        this.numbers = new long[size];
+    }
+
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    public int size() {
+        return objects.length;
+    }
+
+    public boolean isNull(int index) {
+        return objects[index] == null;
+    }
+
+    public long getLong(int index) {
+        return numbers[index];
+    }
+
+    public double getDouble(int index) {
+        return Double.longBitsToDouble(numbers[index]);
+    }
+
+    /**
+     * Get a String value.
+     *
+     * @param index The column position.
+     * @return The value, or null if the value is NULL.
+     */
+    public Object getObject(int index) {
+        return objects[index];
+    }
+
+    public void setLong(int index, long value) {
+        numbers[index] = value;
+        objects[index] = NUMBER;
+    }
+
+    public void setDouble(int index, double value) {
+        numbers[index] = Double.doubleToRawLongBits(value);
+        objects[index] = NUMBER;
+    }
+
+    public void setObject(int index, Object value) {
+        objects[index] = value;
+    }
+
+}
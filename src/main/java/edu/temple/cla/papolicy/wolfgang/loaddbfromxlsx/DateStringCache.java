@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.time.LocalDate;
+
+/**
+ * Formats epoch days as ISO dates (yyyy-mm-dd). The dates in a sheet tend to
+ * repeat, so the most recently formatted dates are kept in a small
+ * direct-mapped cache indexed by the low bits of the epoch day.
+ *
+ * @author Paul Wolfgang
+ */
+public final class DateStringCache {
+
+    private static final int CACHE_SIZE = 512;
+    private static final Entry[] CACHE = new Entry[CACHE_SIZE];
+
+    private DateStringCache() {
+    }
+
+    /**
+     * Format an epoch day.
+     *
+     * @param epochDay The number of days since 1970-01-01.
+     * @return The date in ISO format.
+     */
+    public static String format(long epochDay) {
+        int slot = (int) (epochDay & (CACHE_SIZE - 1));
+        Entry entry = CACHE[slot];
+        if (entry == null || entry.epochDay != epochDay) {
+            entry = new Entry(epochDay, LocalDate.ofEpochDay(epochDay).toString());
+            CACHE[slot] = entry;
+        }
+        return entry.text;
+    }
+
+    /**
+     * Immutable cache entry, so that entries may be shared between threads
+     * without synchronization.
+     */
+    private static final class Entry {
+
+        private final long epochDay;
+        private final String text;
+
+        Entry(long epochDay, String text) {
+            this.epochDay = epochDay;
+            this.text = text;
+        }
+    }
+
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import org.apache.poi.ss.usermodel.CellType;
+
+/**
+ * Reads the rows of a CSV or TSV file. The file is memory-mapped and split
+ * into chunks that end at record boundaries. The chunks are parsed in
+ * parallel on a ForkJoinPool and their rows are passed to the handler in file
+ * order, with a limited number of chunks parsed ahead of the handler. The
+ * first chunk is handled before the others are parsed, so that the columns
+ * the handler does not want, known once it has seen the header row, can be
+ * skipped without decoding them. When quoting is on, the default unless the
+ * delimiter is a tab, fields are quoted as described in RFC 4180: a field
+ * that begins with a double quote may contain delimiters, line breaks and
+ * doubled quotes. When it is off, as in the IANA text/tab-separated-values
+ * format, a quote is an ordinary character and every tab and line break ends
+ * a field. Each field
+ * becomes a STRING cell, or a BLANK cell if it is empty, so the rows are
+ * converted in the same way as a sheet of text cells. The file is expected to
+ * be UTF-8; a leading byte order mark is skipped. Empty lines are ignored but
+ * still counted in the row index.
+ *
+ * @author Paul Wolfgang
+ */
+public class DelimitedSheetReader implements SheetReader {
+
+    /**
+     * The approximate number of bytes in a chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final long SEGMENT_SIZE = 1L << 30;
+    private static final int MAX_CHUNK_SIZE = Integer.MAX_VALUE - 16;
+    private static final byte QUOTE = '"';
+    private static final byte[] BYTE_ORDER_MARK
+            = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    private final byte delimiter;
+    private boolean quoting;
+    private final UploadMetrics metrics;
+    private final ForkJoinPool pool;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Constructor.
+     *
+     * @param delimiter The field delimiter, normally ',' or '\t'.
+     */
+    public DelimitedSheetReader(char delimiter) {
+        this(delimiter, new UploadMetrics());
+    }
+
+    /**
+     * Constructor for a reader that parses on the common pool.
+     *
+     * @param delimiter The field delimiter, normally ',' or '\t'.
+     * @param metrics The metrics that count the bytes parsed.
+     */
+    public DelimitedSheetReader(char delimiter, UploadMetrics metrics) {
+        this(delimiter, metrics, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param delimiter The field delimiter, normally ',' or '\t'.
+     * @param metrics The metrics that count the bytes parsed.
+     * @param pool The pool on which the chunks are parsed.
+     * @throws IllegalArgumentException if the delimiter is not an ASCII
+     * character or is a quote or line break.
+     */
+    public DelimitedSheetReader(char delimiter, UploadMetrics metrics,
+            ForkJoinPool pool) {
+        if (delimiter > 0x7F || delimiter == QUOTE || delimiter == '\r'
+                || delimiter == '\n') {
+            throw new IllegalArgumentException("Invalid delimiter " + (int) delimiter);
+        }
+        this.delimiter = (byte) delimiter;
+        this.quoting = delimiter != '\t';
+        this.metrics = metrics;
+        this.pool = pool;
+    }
+
+    /**
+     * Select whether fields may be quoted. By default quoting is on for any
+     * delimiter other than a tab.
+     *
+     * @param quoting true to treat a quote at the start of a field as
+     * opening a quoted field, false to take quotes literally.
+     */
+    public void setQuoting(boolean quoting) {
+        this.quoting = quoting;
+    }
+
+    /**
+     * Set the approximate number of bytes in a chunk. A chunk is extended to
+     * the end of the record that crosses this size.
+     *
+     * @param chunkSize The chunk size in bytes.
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void read(InputStream input, String sheetName, RowHandler handler)
+            throws Exception {
+        Path tempFile = Files.createTempFile("upload", ".csv");
+        try {
+            Files.copy(input, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            read(tempFile.toFile(), sheetName, handler);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Read the file and pass each row to the handler.
+     *
+     * @param file The delimited file.
+     * @param sheetName Ignored; a delimited file has a single sheet.
+     * @param handler The handler that receives the rows.
+     * @throws Exception If the file cannot be read or the handler throws an
+     * exception.
+     */
+    @Override
+    public void read(File file, String sheetName, RowHandler handler)
+            throws Exception {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            List<Chunk> chunks = findChunks(channel);
+            int lookahead = Math.max(2, pool.getParallelism() * 2);
+            Deque<Chunk> pending = new ArrayDeque<>();
+            int next = 0;
+            int delivered = 0;
+            try {
+                while (next < chunks.size() || !pending.isEmpty()) {
+                    int limit = delivered == 0 ? 1 : lookahead;
+                    while (next < chunks.size() && pending.size() < limit) {
+                        Chunk chunk = chunks.get(next++);
+                        chunk.rows = pool.submit(
+                                () -> parseChunk(channel, chunk, handler));
+                        pending.add(chunk);
+                    }
+                    Chunk chunk = pending.remove();
+                    List<SheetRow> rows;
+                    try {
+                        rows = chunk.rows.join();
+                    } catch (UncheckedIOException ex) {
+                        throw ex.getCause();
+                    }
+                    metrics.bytesParsed(chunk.end - chunk.start);
+                    delivered++;
+                    for (SheetRow row : rows) {
+                        if (handler.wantsRow(row.getRowNum())) {
+                            handler.handleRow(row);
+                        }
+                    }
+                }
+            } finally {
+                for (Chunk chunk : pending) {
+                    chunk.rows.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Scan the file for record boundaries and divide it into chunks of
+     * approximately chunkSize bytes. The scan follows the quoting so that a
+     * line break within a quoted field does not end a chunk, and counts the
+     * records so that each chunk knows the index of its first row.
+     *
+     * @param channel The file.
+     * @return The chunks in file order.
+     * @throws IOException If the file cannot be read or contains a record
+     * longer than 2GB.
+     */
+    List<Chunk> findChunks(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Chunk> chunks = new ArrayList<>();
+        long start = hasByteOrderMark(channel) ? BYTE_ORDER_MARK.length : 0;
+        int records = 0;
+        int firstRow = 0;
+        int state = FIELD_START;
+        for (long segmentStart = start; segmentStart < size;
+                segmentStart += SEGMENT_SIZE) {
+            int segmentLength = (int) Math.min(SEGMENT_SIZE, size - segmentStart);
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY,
+                    segmentStart, segmentLength);
+            for (int i = 0; i < segmentLength; i++) {
+                byte b = segment.get(i);
+                if (b == '\n' && state != QUOTED) {
+                    records++;
+                    state = FIELD_START;
+                    long end = segmentStart + i + 1;
+                    if (end - start >= chunkSize) {
+                        chunks.add(new Chunk(start, end, firstRow));
+                        start = end;
+                        firstRow = records;
+                    }
+                } else {
+                    state = nextState(state, b);
+                    if (segmentStart + i - start >= MAX_CHUNK_SIZE) {
+                        throw new IOException("Record starting at byte " + start
+                                + " is too long");
+                    }
+                }
+            }
+        }
+        if (start < size) {
+            chunks.add(new Chunk(start, size, firstRow));
+        }
+        return chunks;
+    }
+
+    private List<SheetRow> parseChunk(FileChannel channel, Chunk chunk,
+            RowHandler handler) {
+        try {
+            int length = (int) (chunk.end - chunk.start);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    chunk.start, length);
+            byte[] data = new byte[length];
+            buffer.get(data);
+            return parse(data, chunk.firstRow, handler);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Parse the records in a chunk. The fields of columns that the handler
+     * does not want are scanned but not decoded.
+     *
+     * @param data The bytes of the chunk, which begins at a record boundary.
+     * @param firstRow The index of the first record.
+     * @param handler The handler that selects the columns.
+     * @return The rows that are not empty lines.
+     */
+    List<SheetRow> parse(byte[] data, int firstRow, RowHandler handler) {
+        List<SheetRow> rows = new ArrayList<>();
+        List<SheetCell> cells = new ArrayList<>();
+        byte[] field = new byte[64];
+        int length = 0;
+        int rowIndex = firstRow;
+        int column = 0;
+        boolean wanted = handler.wantsColumn(0);
+        int state = FIELD_START;
+        for (byte b : data) {
+            if (state != QUOTED && (b == '\n' || b == delimiter)) {
+                boolean emptyLine = column == 0 && length == 0
+                        && state == FIELD_START;
+                if (wanted) {
+                    cells.add(createCell(rowIndex, column, field, length));
+                }
+                length = 0;
+                state = FIELD_START;
+                column++;
+                if (b == '\n') {
+                    if (!emptyLine) {
+                        rows.add(new SheetRow(rowIndex, cells));
+                    }
+                    rowIndex++;
+                    column = 0;
+                    cells = new ArrayList<>(cells.size());
+                }
+                wanted = handler.wantsColumn(column);
+                continue;
+            }
+            if (b == '\r' && state != QUOTED) {
+                continue;
+            }
+            if (wanted && (b != QUOTE || !quoting || state == UNQUOTED
+                    || state == QUOTE_IN_QUOTED)) {
+                if (length == field.length) {
+                    field = Arrays.copyOf(field, length * 2);
+                }
+                field[length++] = b;
+            }
+            state = nextState(state, b);
+        }
+        if (column > 0 || length > 0 || state != FIELD_START) {
+            if (wanted) {
+                cells.add(createCell(rowIndex, column, field, length));
+            }
+            rows.add(new SheetRow(rowIndex, cells));
+        }
+        return rows;
+    }
+
+    /**
+     * The state after a byte other than a line break that ends a record. A
+     * quote at the start of a field opens a quoted field; within a quoted
+     * field a quote either closes the field or, if doubled, stands for a
+     * quote. A quote elsewhere, and any text after a closing quote, is taken
+     * literally, as is every quote when quoting is off. A carriage return
+     * outside a quoted field is ignored.
+     */
+    private int nextState(int state, byte b) {
+        if (state == QUOTED) {
+            return b == QUOTE ? QUOTE_IN_QUOTED : QUOTED;
+        }
+        if (b == '\r') {
+            return state;
+        }
+        if (b == delimiter) {
+            return FIELD_START;
+        }
+        if (b == QUOTE && quoting
+                && (state == FIELD_START || state == QUOTE_IN_QUOTED)) {
+            return QUOTED;
+        }
+        return UNQUOTED;
+    }
+
+    private static SheetCell createCell(int rowIndex, int columnIndex,
+            byte[] field, int length) {
+        if (length == 0) {
+            return SheetCell.ofType(rowIndex, columnIndex, CellType.BLANK);
+        }
+        return SheetCell.ofString(rowIndex, columnIndex,
+                new String(field, 0, length, StandardCharsets.UTF_8));
+    }
+
+    private static boolean hasByteOrderMark(FileChannel channel) throws IOException {
+        if (channel.size() < BYTE_ORDER_MARK.length) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(BYTE_ORDER_MARK.length);
+        channel.read(buffer, 0);
+        return Arrays.equals(buffer.array(), BYTE_ORDER_MARK);
+    }
+
+    /**
+     * A range of the file that begins and ends at record boundaries.
+     */
+    static class Chunk {
+
+        final long start;
+        final long end;
+        final int firstRow;
+        ForkJoinTask<List<SheetRow>> rows;
+
+        Chunk(long start, long end, int firstRow) {
+            this.start = start;
+            this.end = end;
+            this.firstRow = firstRow;
+        }
+    }
+
+}
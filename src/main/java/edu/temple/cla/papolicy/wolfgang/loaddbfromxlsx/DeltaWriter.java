@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import javax.sql.DataSource;
+import org.apache.log4j.Logger;
+
+/**
+ * RowWriter that only writes the rows that differ from the rows already in
+ * the table. Rows are matched on a set of key columns, by default the
+ * table's primary key. Before the first row is written the key columns and
+ * the loaded columns of the table are read once, and a LongLongHashMap from
+ * the hash of each key to the hash of the row is built. Each converted row is
+ * then inserted if its key is new, updated if its hash differs, and otherwise
+ * not written. If deleteMissing is set, rows of the table whose keys were not
+ * in the sheet are deleted when the load is finished. Key columns must not
+ * be NULL.
+ * <p>
+ * Rows are compared by 64-bit hashes rather than by their values. A
+ * collision between the key hashes of two rows of the table is found when
+ * the table is read, and the upload fails. A collision between a new key in
+ * the sheet and a key of the table would make the new row an UPDATE of a
+ * key that does not exist; each UPDATE must change one row, so this also
+ * fails the upload rather than losing the row. The remaining case, a changed
+ * row whose full hash equals that of the stored row, is left undetected; for
+ * a billion changed rows its chance is about one in 2 * 10^10.
+ *
+ * @author Paul Wolfgang
+ */
+public class DeltaWriter implements RowWriter {
+
+    private static final Logger LOGGER = Logger.getLogger(DeltaWriter.class);
+
+    /**
+     * The low bit of a stored row hash marks a key that was in the sheet.
+     */
+    private static final long SEEN = 1L;
+    private static final int EXPECTED_ROWS = 1024;
+
+    private final Connection conn;
+    private final DataSource dataSource;
+    private final String tableName;
+    private final List<ColumnMetaData> columns;
+    private final int[] columnTypes;
+    private final int[] keyIndexes;
+    private final int[] allIndexes;
+    private final RowWriter inserts;
+    private final KeyedStatementWriter updates;
+    private final boolean deleteMissing;
+    private final int batchSize;
+    private final UploadMetrics metrics;
+    private final LongLongHashMap existing = new LongLongHashMap(EXPECTED_ROWS);
+    private long inserted;
+    private long updated;
+    private long unchanged;
+
+    /**
+     * Constructor. Reads the hashes of the rows in the table.
+     *
+     * @param conn The database connection.
+     * @param dataSource The dataSource, used for a second connection when
+     * deleting rows.
+     * @param tableName Name of the destination table.
+     * @param columns The metadata of the columns being loaded.
+     * @param keyColumns The names of the key columns, or null or empty to use
+     * the table's primary key.
+     * @param inserts The RowWriter used for new rows.
+     * @param deleteMissing true to delete rows whose keys are not in the
+     * sheet.
+     * @param batchSize The number of rows per UPDATE or DELETE batch.
+     * @param metrics The metrics that record each batch sent.
+     * @throws SQLException If a key column is not loaded, the table has no
+     * primary key, or the table cannot be read.
+     */
+    public DeltaWriter(Connection conn, DataSource dataSource, String tableName,
+            List<ColumnMetaData> columns, List<String> keyColumns, RowWriter inserts,
+            boolean deleteMissing, int batchSize, UploadMetrics metrics)
+            throws SQLException {
+        this.conn = conn;
+        this.dataSource = dataSource;
+        this.tableName = tableName;
+        this.columns = columns;
+        this.inserts = inserts;
+        this.deleteMissing = deleteMissing;
+        this.batchSize = batchSize;
+        this.metrics = metrics;
+        columnTypes = new int[columns.size()];
+        allIndexes = new int[columns.size()];
+        for (int i = 0; i < columnTypes.length; i++) {
+            columnTypes[i] = columns.get(i).getDataType();
+            allIndexes[i] = i;
+        }
+        keyIndexes = findKeyIndexes(keyColumns);
+        updates = createUpdateWriter();
+        readExisting();
+    }
+
+    private int[] findKeyIndexes(List<String> keyColumns) throws SQLException {
+        if (keyColumns == null || keyColumns.isEmpty()) {
+            keyColumns = new ArrayList<>();
+            DatabaseMetaData metaData = conn.getMetaData();
+            try (ResultSet rs = metaData.getPrimaryKeys(null, null, tableName)) {
+                while (rs.next()) {
+                    keyColumns.add(rs.getString("COLUMN_NAME"));
+                }
+            }
+            if (keyColumns.isEmpty()) {
+                throw new SQLException("Table " + tableName
+                        + " has no primary key; the key columns must be given");
+            }
+        }
+        int[] indexes = new int[keyColumns.size()];
+        for (int k = 0; k < indexes.length; k++) {
+            indexes[k] = -1;
+            for (int i = 0; i < columns.size(); i++) {
+                if (columns.get(i).getColumnName().equalsIgnoreCase(keyColumns.get(k))) {
+                    indexes[k] = i;
+                }
+            }
+            if (indexes[k] == -1) {
+                throw new SQLException("Key column " + keyColumns.get(k)
+                        + " is not in the sheet");
+            }
+        }
+        return indexes;
+    }
+
+    private KeyedStatementWriter createUpdateWriter() throws SQLException {
+        StringJoiner setList = new StringJoiner(", ", " SET ", "");
+        List<Integer> parameters = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            if (!isKey(i)) {
+                setList.add(quote(i) + " = ?");
+                parameters.add(i);
+            }
+        }
+        if (parameters.isEmpty()) {
+            return null;
+        }
+        for (int index : keyIndexes) {
+            parameters.add(index);
+        }
+        String sql = "UPDATE " + tableName + setList + whereKey();
+        return new KeyedStatementWriter(conn, sql,
+                parameters.stream().mapToInt(Integer::intValue).toArray(),
+                columnTypes, batchSize, metrics, true);
+    }
+
+    private boolean isKey(int index) {
+        for (int keyIndex : keyIndexes) {
+            if (keyIndex == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String quote(int index) {
+        return "`" + columns.get(index).getColumnName() + "`";
+    }
+
+    private String whereKey() {
+        StringJoiner where = new StringJoiner(" AND ", " WHERE ", "");
+        for (int index : keyIndexes) {
+            where.add(quote(index) + " = ?");
+        }
+        return where.toString();
+    }
+
+    private String selectColumns(int[] indexes) {
+        StringJoiner select = new StringJoiner(", ", "SELECT ", " FROM " + tableName);
+        for (int index : indexes) {
+            select.add(quote(index));
+        }
+        return select.toString();
+    }
+
+    /**
+     * Create a statement whose result set is streamed rather than read into
+     * memory. Connector/J streams when the fetch size is Integer.MIN_VALUE.
+     */
+    private static Statement createStreamingStatement(Connection conn) throws SQLException {
+        Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        if (conn.isWrapperFor(com.mysql.jdbc.Connection.class)) {
+            stmt.setFetchSize(Integer.MIN_VALUE);
+        } else {
+            stmt.setFetchSize(EXPECTED_ROWS);
+        }
+        return stmt;
+    }
+
+    private void readExisting() throws SQLException {
+        long start = System.nanoTime();
+        try (Statement stmt = createStreamingStatement(conn);
+                ResultSet rs = stmt.executeQuery(selectColumns(allIndexes))) {
+            while (rs.next()) {
+                ConvertedRow row = RowHasher.readRow(rs, allIndexes, columnTypes,
+                        columnTypes.length);
+                long keyHash = RowHasher.hash(row, keyIndexes, columnTypes);
+                if (existing.indexOf(keyHash) != -1) {
+                    throw new SQLException("Two rows of " + tableName
+                            + " have the same key hash; either the key columns"
+                            + " are not unique or their hashes collide");
+                }
+                existing.put(keyHash, RowHasher.hash(row, allIndexes, columnTypes) & ~SEEN);
+            }
+        }
+        LOGGER.info(String.format("Read %d rows of %s in %.1f s", existing.size(),
+                tableName, (System.nanoTime() - start) / 1.0e9));
+    }
+
+    @Override
+    public void write(ConvertedRow row) throws SQLException {
+        int slot = existing.indexOf(RowHasher.hash(row, keyIndexes, columnTypes));
+        if (slot == -1) {
+            inserts.write(row);
+            inserted++;
+            return;
+        }
+        long stored = existing.valueAt(slot);
+        existing.setValueAt(slot, stored | SEEN);
+        if ((stored & ~SEEN) == (RowHasher.hash(row, allIndexes, columnTypes) & ~SEEN)) {
+            unchanged++;
+        } else if (updates != null) {
+            updates.write(row);
+            updated++;
+        }
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        inserts.flush();
+        if (updates != null) {
+            updates.flush();
+        }
+    }
+
+    /**
+     * Delete the rows whose keys were not in the sheet, if deleteMissing is
+     * set, and log the number of rows inserted, updated, unchanged and
+     * deleted. The keys of the table are read again on a second connection
+     * while the rows are deleted on this one.
+     *
+     * @throws SQLException If the rows cannot be deleted.
+     */
+    public void finish() throws SQLException {
+        flush();
+        long deleted = 0;
+        if (deleteMissing) {
+            String sql = "DELETE FROM " + tableName + whereKey();
+            try (Connection readConn = dataSource.getConnection();
+                    Statement stmt = createStreamingStatement(readConn);
+                    ResultSet rs = stmt.executeQuery(selectColumns(keyIndexes));
+                    KeyedStatementWriter deletes = new KeyedStatementWriter(conn,
+                            sql, keyIndexes, columnTypes, batchSize, metrics)) {
+                while (rs.next()) {
+                    ConvertedRow key = RowHasher.readRow(rs, keyIndexes, columnTypes,
+                            columnTypes.length);
+                    int slot = existing.indexOf(RowHasher.hash(key, keyIndexes, columnTypes));
+                    if (slot != -1 && (existing.valueAt(slot) & SEEN) == 0) {
+                        deletes.write(key);
+                        deleted++;
+                    }
+                }
+                deletes.flush();
+            }
+        }
+        LOGGER.info("Delta load of " + tableName + ": " + inserted + " inserted, "
+                + updated + " updated, " + unchanged + " unchanged, "
+                + deleted + " deleted");
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            inserts.close();
+        } finally {
+            if (updates != null) {
+                updates.close();
+            }
+        }
+    }
+
+}
@@ -32,37 +32,28 @@
 package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
 
 import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
-import edu.temple.cla.policydb.dbutilities.DBUtil;
-import static edu.temple.cla.policydb.dbutilities.DBUtil.doubleQuotes;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.time.Instant;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
-import static java.time.format.DateTimeFormatter.ISO_LOCAL_DATE;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
-import java.util.StringJoiner;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 import javax.sql.DataSource;
 import org.apache.log4j.Logger;
-import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Row;
 import static org.apache.poi.ss.usermodel.CellType.*;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 /**
  *
@@ -71,15 +62,35 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 public class DoUpload {
 
     private static final Logger LOGGER = Logger.getLogger(DoUpload.class);
-    private static final long MS_PER_DAY = 24 * 3600 * 1000;
     private static final long BASE_TIME = LocalDate.of(1899, 12, 31).toEpochDay();
     private static final LocalDate FEB28_1900 = LocalDate.of(1900, 2, 28);
     private static final long FEB28_1900_NUM_DAYS
             = (FEB28_1900.toEpochDay() - BASE_TIME);
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_QUEUE_CAPACITY = 10000;
 
     private final DataSource dataSource;
     private Map<String, String> databaseToSpteadsheetNames;
     private List<String> spreadsheetColumnNames;
+    private ColumnPlan columnPlan;
+    private boolean streaming;
+    private boolean mappedSharedStrings;
+    private InputFormat inputFormat = InputFormat.XLSX;
+    private WriteMode writeMode = WriteMode.INSERT;
+    private LoadMode loadMode = LoadMode.APPEND;
+    private List<String> keyColumns;
+    private boolean deleteMissing;
+    private int batchSize;
+    private int converterThreads;
+    private int writerThreads;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private UploadListener uploadListener;
+    private boolean resumable;
+    private List<DataSource> shards;
+    private ShardRouter shardRouter;
+    private TableMetadataCache metadataCache = TableMetadataCache.getShared();
+    private UploadLimiter uploadLimiter = UploadLimiter.getShared();
+    private UploadRegistry uploadRegistry;
 
     /**
      * Constructor.
@@ -90,57 +101,635 @@ public class DoUpload {
         this.dataSource = dataSource;
     }
 
+    /**
+     * Select the format of the input. A CSV or TSV file is read by a
+     * DelimitedSheetReader, which parses the file in parallel chunks; its
+     * first line holds the column names and the sheet name is ignored. CSV
+     * fields may be quoted; TSV fields may not. The columns are mapped and converted in the same way as those of a
+     * workbook. The default is XLSX.
+     *
+     * @param inputFormat The input format.
+     */
+    public void setInputFormat(InputFormat inputFormat) {
+        this.inputFormat = inputFormat;
+    }
+
+    /**
+     * Select how the workbook is read. When streaming is true the sheet XML is
+     * parsed as a stream of SAX events and rows are converted as they are
+     * read, so the memory required does not depend on the number of rows.
+     * Otherwise the whole workbook is loaded as an XSSFWorkbook.
+     *
+     * @param streaming true to use the streaming reader.
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Select where the streaming reader holds the workbook's shared strings
+     * table, which contains the text of the STRING cells. When
+     * mappedSharedStrings is true the strings are held in memory-mapped
+     * temporary files rather than on the heap. This implies streaming.
+     *
+     * @param mappedSharedStrings true to hold the strings in mapped files.
+     */
+    public void setMappedSharedStrings(boolean mappedSharedStrings) {
+        this.mappedSharedStrings = mappedSharedStrings;
+    }
+
+    /**
+     * Select how rows are written to the database. The default is
+     * WriteMode.INSERT.
+     *
+     * @param writeMode The write mode.
+     */
+    public void setWriteMode(WriteMode writeMode) {
+        this.writeMode = writeMode;
+    }
+
+    /**
+     * Select how the rows are combined with the existing contents of the
+     * table. The default is LoadMode.APPEND. With LoadMode.REPLACE the rows
+     * are loaded into a StagingTable without secondary indexes, which then
+     * replaces the table. The table is unchanged if the upload fails. Rows
+     * written to the table by other programs during the upload are lost when
+     * the staging table replaces it.
+     *
+     * @param loadMode The load mode.
+     */
+    public void setLoadMode(LoadMode loadMode) {
+        this.loadMode = loadMode;
+    }
+
+    /**
+     * Set the columns on which rows are matched in LoadMode.DELTA. By default
+     * the primary key of the table is used.
+     *
+     * @param keyColumns The database names of the key columns, or null to use
+     * the primary key.
+     */
+    public void setKeyColumns(List<String> keyColumns) {
+        this.keyColumns = keyColumns;
+    }
+
+    /**
+     * Select whether rows of the table whose keys are not in the sheet are
+     * deleted in LoadMode.DELTA. The default is false.
+     *
+     * @param deleteMissing true to delete the rows.
+     */
+    public void setDeleteMissing(boolean deleteMissing) {
+        this.deleteMissing = deleteMissing;
+    }
+
+    /**
+     * Set the number of rows per batch. In WriteMode.BATCH this is the
+     * maximum number of rows in each executeBatch; otherwise the size of each
+     * batch depends only on its length in bytes, which is adjusted to the
+     * server by a BatchSizer. In a resumable upload this is the number of
+     * rows per commit, which is 1000 if it is not set.
+     *
+     * @param batchSize The number of rows per batch.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Set the number of threads that convert rows. If either this or the
+     * number of writer threads is positive, rows are converted and written by
+     * an UploadPipeline while the sheet is being read. Otherwise everything is
+     * done on the calling thread.
+     *
+     * @param converterThreads The number of conversion threads.
+     */
+    public void setConverterThreads(int converterThreads) {
+        this.converterThreads = converterThreads;
+    }
+
+    /**
+     * Set the number of threads that write rows to the database. Each writer
+     * thread uses its own connection from the dataSource.
+     *
+     * @param writerThreads The number of writer threads.
+     */
+    public void setWriterThreads(int writerThreads) {
+        this.writerThreads = writerThreads;
+    }
+
+    /**
+     * Set the number of rows each pipeline queue can hold before the stage
+     * that feeds it has to wait.
+     *
+     * @param queueCapacity The queue capacity in rows.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Set the listener that receives progress reports during run.
+     *
+     * @param uploadListener The listener, or null for none.
+     */
+    public void setUploadListener(UploadListener uploadListener) {
+        this.uploadListener = uploadListener;
+    }
+
+    /**
+     * Make the upload resumable. Rows are committed every batchSize rows
+     * together with a checkpoint in the CheckpointTable recording the last
+     * row committed. If an upload of the same workbook into the same table
+     * failed, rows up to the checkpoint are skipped without being converted.
+     * The workbook is identified by the SHA-256 hash of its contents, and an
+     * upload is refused while the table has an incomplete upload of a
+     * different workbook. Resumable uploads are done on the calling thread,
+     * so the converter and writer threads are ignored, and the destination
+     * table must use a transactional storage engine such as InnoDB.
+     *
+     * @param resumable true to commit and checkpoint each batch.
+     */
+    public void setResumable(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    /**
+     * Load the rows into several databases that each hold part of the table.
+     * The table must have the same definition on every shard; its metadata is
+     * read through the DataSource given to the constructor, which is normally
+     * one of the shards. Each row is written to the shard chosen by the
+     * ShardRouter, by a ShardedWriter with one writer thread per shard. Only
+     * append uploads can be sharded, they cannot be resumed, and the rows are
+     * converted on the calling thread.
+     *
+     * @param shards The DataSource of each shard, or null for an upload to
+     * the DataSource given to the constructor.
+     * @param shardRouter Chooses the shard for each row.
+     */
+    public void setShards(List<DataSource> shards, ShardRouter shardRouter) {
+        this.shards = shards;
+        this.shardRouter = shardRouter;
+    }
+
+    /**
+     * Set the cache of table metadata. By default the cache shared by all
+     * DoUpload objects is used, so repeated uploads into the same table read
+     * its metadata only once in the cache's time to live. A table is removed
+     * from the cache if its upload fails with an SQLException.
+     *
+     * @param metadataCache The cache, or null to read the metadata on every
+     * upload.
+     */
+    public void setMetadataCache(TableMetadataCache metadataCache) {
+        this.metadataCache = metadataCache;
+    }
+
+    /**
+     * Set the limiter that bounds the number of uploads started by runAsync
+     * that run at once. By default the limiter shared by all DoUpload objects
+     * is used, which allows UploadLimiter.DEFAULT_MAX_UPLOADS uploads.
+     *
+     * @param uploadLimiter The limiter.
+     */
+    public void setUploadLimiter(UploadLimiter uploadLimiter) {
+        this.uploadLimiter = uploadLimiter;
+    }
+
+    /**
+     * Set the registry of previous uploads. The input is then copied to a
+     * temporary file and hashed before the upload starts. If the registry
+     * shows that the same content was the last uploaded into the table, with
+     * the same load mode, and the table's columns are unchanged, the upload
+     * is skipped without parsing the input. The columns are always read from
+     * the database for this check, so a table altered since its metadata was
+     * cached is not mistaken for an unchanged one. Otherwise the registry is
+     * updated once the upload succeeds. By default there is no registry.
+     *
+     * @param uploadRegistry The registry, or null to upload every time.
+     */
+    public void setUploadRegistry(UploadRegistry uploadRegistry) {
+        this.uploadRegistry = uploadRegistry;
+    }
+
     /**
      * Main program.
      *
      * @param input Input stream containing the xlsx file.
      * @param sheetName Worksheet name containing the data.
      * @param tableName Name of the destination table.
+     * @return The metrics of the upload. If the upload failed the summary
+     * contains the exception, which has also been logged.
+     */
+    public UploadSummary run(InputStream input, String sheetName, String tableName) {
+        return run(input, sheetName, tableName, () -> false);
+    }
+
+    /**
+     * Run the upload on an executor, for callers such as a web server that
+     * must not be blocked for the duration of the upload. The upload waits,
+     * without occupying a thread, until the UploadLimiter allows it to start.
+     * The future completes with the summary of the upload, which contains the
+     * exception if the upload failed. Cancelling the future stops the upload
+     * before the next row: rows in batches already sent remain in the table
+     * unless the upload is resumable. The input stream must remain readable
+     * until the upload completes, and a DoUpload object must not run more
+     * than one upload at a time.
+     *
+     * @param input Input stream containing the xlsx file.
+     * @param sheetName Worksheet name containing the data.
+     * @param tableName Name of the destination table.
+     * @param executor The executor that runs the upload.
+     * @return The future summary of the upload.
      */
-    public void run(InputStream input, String sheetName, String tableName) {
-        try (XSSFWorkbook wb = new XSSFWorkbook(input);
-                Connection conn = dataSource.getConnection();
-                Statement stmt = conn.createStatement();) {
-            XSSFSheet sheet = wb.getSheet(sheetName);
-            if (sheet == null) {
-                throw new Exception("Sheet " + sheetName + " does not exist");
+    public CompletableFuture<UploadSummary> runAsync(InputStream input,
+            String sheetName, String tableName, Executor executor) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        CompletableFuture<UploadSummary> future = uploadLimiter.submit(
+                () -> run(input, sheetName, tableName, cancelled::get), executor);
+        future.whenComplete((summary, ex) -> {
+            if (future.isCancelled()) {
+                cancelled.set(true);
             }
-            Iterator<Row> rowIterator = sheet.iterator();
-            Row firstRow = rowIterator.next();
-            getSpreadsheetColumnNames(firstRow);
-            DatabaseMetaData metaData = conn.getMetaData();
-            List<ColumnMetaData> databaseColumnMetadataList;
-            try (ResultSet rs2 = metaData.getColumns(null, null, tableName, null)) {
-                databaseColumnMetadataList = ColumnMetaData.getColumnMetaDataList(rs2);
+        });
+        return future;
+    }
+
+    private UploadSummary run(InputStream input, String sheetName, String tableName,
+            BooleanSupplier cancelled) {
+        UploadMetrics metrics = new UploadMetrics(uploadListener);
+        SheetReader reader = createReader(metrics);
+        Exception error = null;
+        try {
+            if (resumable && loadMode != LoadMode.APPEND) {
+                throw new IllegalStateException(
+                        "Only an append upload can be resumed");
             }
-            List<ColumnMetaData> filteredColumnList = filterColumnList(databaseColumnMetadataList);
-            while (rowIterator.hasNext()) {
-                StringJoiner values = new StringJoiner(",\n");
-                while (rowIterator.hasNext() && values.length() < 10000000) {
-                    Row row = rowIterator.next();
-                    buildValuesList(row, filteredColumnList)
-                            .ifPresent(values::add);
-                }
-                String sqlInsertStatement = DBUtil.buildSqlInsertStatement(tableName, filteredColumnList);
-                String insert = sqlInsertStatement + "\n" + values.toString();
+            if (shards != null && (resumable || loadMode != LoadMode.APPEND)) {
+                throw new IllegalStateException(
+                        "Only an append upload that is not resumable can be sharded");
+            }
+            if (resumable || uploadRegistry != null) {
+                Path workbookFile = Files.createTempFile("upload", ".xlsx");
                 try {
-                    stmt.executeUpdate(insert);
-                } catch (SQLException sqlex) {
-                    System.err.println("Error in SQL");
-                    System.err.println(insert);
-                    throw sqlex;
+                    String workbookHash = ContentHash.copyAndHash(input, workbookFile);
+                    if (uploadRegistry == null) {
+                        load(null, workbookFile, workbookHash, sheetName, tableName,
+                                reader, metrics, cancelled);
+                    } else {
+                        String contentHash
+                                = uploadHash(workbookFile, workbookHash, sheetName);
+                        String database;
+                        String fingerprint;
+                        try (Connection conn = dataSource.getConnection()) {
+                            database = UploadRegistry.database(conn);
+                            fingerprint = tableFingerprint(conn, tableName);
+                        }
+                        if (uploadRegistry.isLoaded(database, tableName, contentHash,
+                                fingerprint)) {
+                            metrics.duplicateSkipped();
+                        } else {
+                            uploadRegistry.remove(database, tableName);
+                            load(null, workbookFile, workbookHash, sheetName, tableName,
+                                    reader, metrics, cancelled);
+                            uploadRegistry.record(database, tableName, contentHash,
+                                    fingerprint);
+                        }
+                    }
+                } finally {
+                    Files.deleteIfExists(workbookFile);
                 }
+            } else {
+                load(input, null, null, sheetName, tableName, reader, metrics, cancelled);
             }
         } catch (IOException ioex) {
             LOGGER.error("Unable to open workbook", ioex);
+            error = ioex;
         } catch (SQLException sqlex) {
             LOGGER.error("Error accessing database", sqlex);
+            if (metadataCache != null) {
+                metadataCache.invalidate(dataSource, tableName);
+            }
+            error = sqlex;
+        } catch (CancellationException cex) {
+            LOGGER.info("Upload of " + sheetName + " into " + tableName + " cancelled");
+            error = cex;
         } catch (Exception e) {
             LOGGER.error("Error processing ", e);
+            error = e;
+        }
+        UploadSummary summary = metrics.finish(error);
+        LOGGER.info("Upload of " + sheetName + " into " + tableName + ": " + summary);
+        return summary;
+    }
+
+    /**
+     * Read the sheet from the input stream or, if it has been copied, from
+     * the workbook file and write its rows to the table.
+     */
+    private void load(InputStream input, Path workbookFile, String workbookHash,
+            String sheetName, String tableName, SheetReader reader,
+            UploadMetrics metrics, BooleanSupplier cancelled) throws Exception {
+        try (Connection conn = dataSource.getConnection();
+                UploadHandler uploadHandler = new UploadHandler(conn, sheetName,
+                        tableName, metrics, cancelled)) {
+            if (resumable) {
+                uploadHandler.workbookHash = workbookHash;
+            }
+            if (workbookFile != null) {
+                reader.read(workbookFile.toFile(), sheetName, uploadHandler);
+            } else {
+                reader.read(input, sheetName, uploadHandler);
+            }
+            uploadHandler.flush();
+        }
+    }
+
+    /**
+     * Compute the hash recorded in the uploadRegistry. It covers the contents
+     * of the sheet, or of the whole file if it is not a workbook, and the
+     * settings that determine what the upload leaves in the table.
+     */
+    private String uploadHash(Path workbookFile, String workbookHash, String sheetName)
+            throws Exception {
+        String content = inputFormat == InputFormat.XLSX
+                ? sheetName + '\n' + StreamingSheetReader.hashSheet(
+                        workbookFile.toFile(), sheetName)
+                : workbookHash;
+        String upload = inputFormat + "\n" + loadMode + '\n' + keyColumns + '\n'
+                + deleteMissing + '\n' + (shards == null ? 0 : shards.size()) + '\n'
+                + content;
+        return ContentHash.toHex(ContentHash.newDigest().digest(
+                upload.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Compute the fingerprint of the columns of a table as they are now. The
+     * metadata is read from the database rather than the metadataCache, since
+     * the table may have been altered within the cache's time to live. If it
+     * has, the cached entry is removed so that the upload uses the new
+     * columns.
+     */
+    private String tableFingerprint(Connection conn, String tableName)
+            throws SQLException {
+        List<ColumnMetaData> columns = TableMetadataCache.readColumns(conn, tableName);
+        String fingerprint = ContentHash.fingerprint(columns);
+        if (metadataCache != null) {
+            List<ColumnMetaData> cached
+                    = metadataCache.getColumns(dataSource, tableName, () -> columns);
+            if (!ContentHash.fingerprint(cached).equals(fingerprint)) {
+                metadataCache.invalidate(dataSource, tableName);
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Create the SheetReader selected by the inputFormat, streaming and
+     * mappedSharedStrings settings.
+     *
+     * @param metrics The metrics that count the bytes parsed.
+     * @return The SheetReader.
+     */
+    SheetReader createReader(UploadMetrics metrics) {
+        if (inputFormat == InputFormat.CSV) {
+            return new DelimitedSheetReader(',', metrics);
+        }
+        if (inputFormat == InputFormat.TSV) {
+            return new DelimitedSheetReader('\t', metrics);
+        }
+        if (!streaming && !mappedSharedStrings) {
+            return new WorkbookSheetReader(metrics);
+        }
+        StreamingSheetReader reader = new StreamingSheetReader(metrics);
+        reader.setMappedSharedStrings(mappedSharedStrings);
+        return reader;
+    }
+
+    /**
+     * Create the RowWriter for the selected write mode.
+     *
+     * @param conn The database connection.
+     * @param tableName Name of the destination table.
+     * @param columns The metadata of the columns being loaded.
+     * @param metrics The metrics that record each batch sent.
+     * @return The RowWriter.
+     * @throws SQLException If the writer's statement cannot be created.
+     */
+    RowWriter createWriter(Connection conn, String tableName,
+            List<ColumnMetaData> columns, UploadMetrics metrics) throws SQLException {
+        switch (writeMode) {
+            case BATCH:
+                return new PreparedStatementWriter(conn, tableName, columns,
+                        batchSize > 0 ? batchSize : Integer.MAX_VALUE, metrics);
+            case LOAD_DATA:
+                return new LoadDataWriter(conn, tableName, columns, metrics);
+            default:
+                return new InsertStatementWriter(conn, tableName, columns, metrics);
+        }
+    }
+
+    /**
+     * RowHandler that reads the column names from the first row and then
+     * converts the remaining rows and passes them to the RowWriter, or to the
+     * UploadPipeline if conversion and writing are done on other threads.
+     * If the workbookHash is set the rows are committed in batches with a
+     * checkpoint, and rows before the last checkpoint are not wanted.
+     */
+    private class UploadHandler implements RowHandler, AutoCloseable {
+
+        private final Connection conn;
+        private final String sheetName;
+        private final String tableName;
+        private final UploadMetrics metrics;
+        private final BooleanSupplier cancelled;
+        private List<ColumnMetaData> filteredColumnList;
+        private RowWriter writer;
+        private UploadPipeline pipeline;
+        private String workbookHash;
+        private CheckpointTable checkpoint;
+        private StagingTable staging;
+        private DeltaWriter delta;
+        private int resumeAfterRow;
+        private int lastRow;
+        private int rowsSinceCommit;
+        private boolean complete;
+        private boolean swapped;
+
+        UploadHandler(Connection conn, String sheetName, String tableName,
+                UploadMetrics metrics, BooleanSupplier cancelled) {
+            this.conn = conn;
+            this.sheetName = sheetName;
+            this.tableName = tableName;
+            this.metrics = metrics;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public boolean wantsRow(int rowIndex) {
+            return filteredColumnList == null || rowIndex > resumeAfterRow;
+        }
+
+        @Override
+        public boolean wantsColumn(int columnIndex) {
+            ColumnPlan plan = columnPlan;
+            return filteredColumnList == null || plan == null
+                    || plan.isLoaded(columnIndex);
+        }
+
+        @Override
+        public void handleRow(SheetRow row) throws Exception {
+            if (filteredColumnList == null) {
+                getSpreadsheetColumnNames(row);
+                TableMapping mapping = metadataCache != null
+                        ? metadataCache.getMapping(dataSource, conn, tableName,
+                                spreadsheetColumnNames)
+                        : TableMapping.build(spreadsheetColumnNames,
+                                TableMetadataCache.readColumns(conn, tableName));
+                filteredColumnList = useMapping(mapping);
+                String targetName = tableName;
+                if (loadMode == LoadMode.REPLACE) {
+                    staging = new StagingTable(conn, tableName);
+                    staging.create();
+                    targetName = staging.getName();
+                }
+                if (workbookHash != null) {
+                    startCheckpoints();
+                    writer = createWriter(conn, targetName, filteredColumnList, metrics);
+                } else if (loadMode == LoadMode.DELTA) {
+                    if (converterThreads > 0 || writerThreads > 0) {
+                        LOGGER.warn("Delta uploads are done on a single thread");
+                    }
+                    delta = new DeltaWriter(conn, dataSource, tableName,
+                            filteredColumnList, keyColumns,
+                            createWriter(conn, tableName, filteredColumnList, metrics),
+                            deleteMissing,
+                            batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE, metrics);
+                    writer = delta;
+                } else if (shards != null) {
+                    if (converterThreads > 0 || writerThreads > 0) {
+                        LOGGER.warn("Sharded uploads have one writer thread per shard");
+                    }
+                    writer = new ShardedWriter(DoUpload.this, shards,
+                            shardRouter.bind(filteredColumnList, shards.size()),
+                            tableName, filteredColumnList, queueCapacity, metrics);
+                } else if (converterThreads > 0 || writerThreads > 0) {
+                    pipeline = new UploadPipeline(DoUpload.this, dataSource,
+                            targetName, filteredColumnList, Math.max(converterThreads, 1),
+                            Math.max(writerThreads, 1), queueCapacity, metrics);
+                } else {
+                    writer = createWriter(conn, targetName, filteredColumnList, metrics);
+                }
+                return;
+            }
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException("Upload cancelled");
+            }
+            metrics.rowRead();
+            if (pipeline != null) {
+                pipeline.submit(row);
+                return;
+            }
+            Optional<ConvertedRow> convertedRow = convertRow(row, filteredColumnList);
+            if (convertedRow.isPresent()) {
+                writer.write(convertedRow.get());
+            } else {
+                metrics.rowSkipped();
+            }
+            if (checkpoint != null) {
+                lastRow = row.getRowNum();
+                if (++rowsSinceCommit >= (batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE)) {
+                    commit();
+                }
+            }
+        }
+
+        /**
+         * Create the checkpoint table, find the row to resume after, and
+         * start the first transaction.
+         *
+         * @throws SQLException If the checkpoint table cannot be accessed or
+         * the table has an incomplete upload of a different workbook.
+         */
+        private void startCheckpoints() throws SQLException {
+            if (converterThreads > 0 || writerThreads > 0) {
+                LOGGER.warn("Resumable uploads are done on a single thread");
+            }
+            checkpoint = new CheckpointTable(conn);
+            checkpoint.create();
+            resumeAfterRow = checkpoint.find(tableName, sheetName, workbookHash);
+            if (resumeAfterRow > 0) {
+                LOGGER.info("Resuming upload of " + sheetName + " into "
+                        + tableName + " after row " + (resumeAfterRow + 1));
+            }
+            conn.setAutoCommit(false);
+        }
+
+        /**
+         * Write the rows since the last commit and commit them together with
+         * the checkpoint.
+         *
+         * @throws SQLException If the rows or the checkpoint cannot be written.
+         */
+        private void commit() throws SQLException {
+            writer.flush();
+            checkpoint.save(tableName, sheetName, workbookHash, lastRow);
+            conn.commit();
+            rowsSinceCommit = 0;
+        }
+
+        void flush() throws Exception {
+            if (pipeline != null) {
+                pipeline.finish();
+            } else if (delta != null) {
+                delta.finish();
+            } else if (writer != null) {
+                writer.flush();
+            }
+            if (checkpoint != null) {
+                checkpoint.delete(tableName);
+                conn.commit();
+                complete = true;
+            }
+            if (staging != null) {
+                staging.swap();
+                swapped = true;
+            }
+        }
+
+        @Override
+        public void close() throws Exception {
+            try {
+                if (pipeline != null) {
+                    pipeline.close();
+                } else if (writer != null) {
+                    writer.close();
+                }
+            } finally {
+                if (checkpoint != null) {
+                    if (!complete) {
+                        conn.rollback();
+                    }
+                    conn.setAutoCommit(true);
+                }
+                if (staging != null && !swapped) {
+                    staging.drop();
+                }
+            }
         }
     }
 
     public void getSpreadsheetColumnNames(Row firstRow) {
+        getSpreadsheetColumnNames(SheetRow.of(firstRow));
+    }
+
+    public void getSpreadsheetColumnNames(SheetRow firstRow) {
         spreadsheetColumnNames = new ArrayList<>();
         firstRow.forEach(cell -> {
             try {
@@ -170,22 +759,26 @@ public class DoUpload {
      * and filters our any spreadsheet column that does not have a corresponding
      * database column. This name translation is included since spreadsheets may
      * contain names from an Access database that do not represent legal MySQL
-     * names. As a side-effect the Map databaseToSpteadsheetNames is
-     * initialized.
+     * names. As a side-effect the Map databaseToSpteadsheetNames and the
+     * ColumnPlan used to convert rows are initialized.
      *
      * @param columnList The list of spreadsheet column names.
      * @return The filtered list of legal database column names.
      */
     List<ColumnMetaData> filterColumnList(List<ColumnMetaData> columnList) {
-        databaseToSpteadsheetNames = new HashMap<>();
-        List<ColumnMetaData> newColumnList = new ArrayList<>();
-        spreadsheetColumnNames.forEach((columnName) -> {
-            String dbColumnName = DBUtil.convertToLegalName(columnName).toString();
-            databaseToSpteadsheetNames.put(dbColumnName, columnName);
-        });
-        return columnList.stream()
-                .filter(metadata -> Objects.nonNull(databaseToSpteadsheetNames.get(metadata.getColumnName())))
-                .collect(Collectors.toList());
+        return useMapping(TableMapping.build(spreadsheetColumnNames, columnList));
+    }
+
+    /**
+     * Use a mapping to convert rows.
+     *
+     * @param mapping The mapping built from the spreadsheet column names.
+     * @return The filtered list of database columns.
+     */
+    private List<ColumnMetaData> useMapping(TableMapping mapping) {
+        databaseToSpteadsheetNames = mapping.getDatabaseToSpreadsheetNames();
+        columnPlan = mapping.getPlan();
+        return mapping.getColumns();
     }
 
     /**
@@ -197,90 +790,83 @@ public class DoUpload {
      */
     public Optional<String> buildValuesList(Row row,
             List<ColumnMetaData> metaDataList) {
-        Map<String, String> record = new HashMap<>();
-        for (Cell cell : row) {
+        return buildValuesList(SheetRow.of(row), metaDataList);
+    }
+
+    /**
+     * Method to build the list of values for a row.
+     *
+     * @param row The spreadsheet row.
+     * @param metaDataList The list of column metadata for each database column.
+     * @return
+     */
+    public Optional<String> buildValuesList(SheetRow row,
+            List<ColumnMetaData> metaDataList) {
+        return convertRow(row, metaDataList)
+                .map(convertedRow -> InsertStatementWriter.toValuesList(convertedRow, metaDataList));
+    }
+
+    /**
+     * Method to convert the values of a row to the types of the database
+     * columns.
+     *
+     * @param row The spreadsheet row.
+     * @param metaDataList The list of column metadata for each database column.
+     * @return The converted row, or empty if the row contains no values or a
+     * column has an unrecognized type.
+     */
+    public Optional<ConvertedRow> convertRow(SheetRow row,
+            List<ColumnMetaData> metaDataList) {
+        ColumnPlan plan = columnPlan;
+        if (plan == null || plan.getColumns() != metaDataList) {
+            plan = ColumnPlan.compile(spreadsheetColumnNames,
+                    databaseToSpteadsheetNames, metaDataList);
+        }
+        ConvertedRow convertedRow = new ConvertedRow(row.getRowNum(), metaDataList.size());
+        boolean hasValue = false;
+        for (SheetCell cell : row) {
             try {
-                int columnIndex = cell.getColumnIndex();
-                String value = null;
+                ColumnConverter converter = plan.getConverter(cell.getColumnIndex());
                 CellType cellType = cell.getCellTypeEnum();
                 switch (cellType) {
-                    case _NONE:
-                        break;
-                    case BLANK:
-                        break;
                     case BOOLEAN:
-                        value = Boolean.toString(cell.getBooleanCellValue());
-                        break;
-                    case ERROR:
+                        hasValue = true;
+                        if (converter != null
+                                && !converter.convert(cell.getBooleanCellValue(), convertedRow)) {
+                            return Optional.empty();
+                        }
                         break;
                     case FORMULA:
                         LOGGER.error("Cell " + cell.getAddress() + " contains a formula");
                         break;
                     case NUMERIC:
-                        value = String.format("%.0f", cell.getNumericCellValue());
+                        hasValue = true;
+                        if (converter != null
+                                && !converter.convert(cell.getNumericCellValue(), convertedRow)) {
+                            return Optional.empty();
+                        }
                         break;
                     case STRING:
-                        value = cell.getStringCellValue();
+                        hasValue = true;
+                        String value = cell.getStringCellValue();
+                        if (converter != null && !value.isEmpty() && !value.equals("null")
+                                && !converter.convert(value, convertedRow)) {
+                            return Optional.empty();
+                        }
                         break;
                     default:
                         break;
                 }
-                if (value != null) {
-                    record.put(spreadsheetColumnNames.get(columnIndex), value);
-                }
-                columnIndex++;
             } catch (Exception ex) {
                 String message = String.format("Error processing row: %d, column: %d",
                         cell.getRowIndex(), cell.getColumnIndex());
                 throw new RuntimeException(message, ex);
             }
         }
-        if (record.isEmpty()) {
+        if (!hasValue) {
             return Optional.empty();
         }
-        StringJoiner valuesList = new StringJoiner(", ", "(", ")");
-        for (ColumnMetaData metaData : metaDataList) {
-            int columnType = metaData.getDataType();
-            String columnName = metaData.getColumnName();
-            String spreadsheetColumnName = databaseToSpteadsheetNames.get(columnName);
-            if (spreadsheetColumnName != null) {
-                String value = record.get(spreadsheetColumnName);
-                if (value == null || value.isEmpty() || value.equals("null")) {
-                    valuesList.add("NULL");
-                } else {
-                    switch (columnType) {
-                        case java.sql.Types.BINARY:
-                        case java.sql.Types.VARBINARY:
-                            valuesList.add(value);
-                            break;
-                        case java.sql.Types.CHAR:
-                        case java.sql.Types.VARCHAR:
-                        case java.sql.Types.LONGVARCHAR:
-                            valuesList.add("\'" + doubleQuotes(value) + "\'");
-                            break;
-                        case java.sql.Types.REAL:
-                        case java.sql.Types.DOUBLE:
-                            valuesList.add(DBUtil.removeCommas(value));
-                            break;
-                        case java.sql.Types.BIT:
-                        case java.sql.Types.TINYINT:
-                        case java.sql.Types.SMALLINT:
-                        case java.sql.Types.INTEGER:
-                            valuesList.add(removeFraction(value));
-                            break;
-                        case java.sql.Types.TIMESTAMP:
-                        case java.sql.Types.DATE:
-                            valuesList.add("'" + excelDateToDate(value) + "'");
-                            break;
-                        default:
-                            String message = "Unrecognized type: " + columnType
-                                    + " Type name: " + columnName;
-                            return Optional.empty();
-                    }
-                }
-            }
-        }
-        return Optional.of(valuesList.toString());
+        return Optional.of(convertedRow);
     }
 
     public static String removeFraction(String number) {
@@ -293,15 +879,61 @@ public class DoUpload {
 
     public static String excelDateToDate(String excelDateString) {
         double excelDate = Double.parseDouble(excelDateString);
+        return DateStringCache.format(excelDateToEpochDay(excelDate));
+    }
+
+    /**
+     * Convert an Excel date serial number to the number of days since
+     * 1970-01-01. Excel treats 1900 as a leap year, so serial numbers after
+     * 1900-02-28 are one greater than the actual number of days since
+     * 1899-12-31. Any fraction (time of day) is ignored.
+     *
+     * @param excelDate The Excel date serial number.
+     * @return The epoch day.
+     */
+    public static long excelDateToEpochDay(double excelDate) {
         long numberOfDays = (long) excelDate;
         if (numberOfDays > FEB28_1900_NUM_DAYS) {
             numberOfDays--;
         }
-        long javaDateValue = (numberOfDays + BASE_TIME) * MS_PER_DAY;
-        Instant javaInstant = Instant.ofEpochMilli(javaDateValue);
-        LocalDateTime javaDateTime = LocalDateTime.ofInstant(javaInstant, ZoneOffset.UTC);
-        String javaDateString = javaDateTime.format(ISO_LOCAL_DATE);
-        return javaDateString;
+        return numberOfDays + BASE_TIME;
+    }
+
+    /**
+     * Convert a date written as text to the number of days since 1970-01-01.
+     * The date may be written as year-month-day, as in ISO 8601, or as
+     * month/day/year, the form Excel uses when it saves a CSV file. Any time
+     * of day following the date is ignored.
+     *
+     * @param text The date.
+     * @return The epoch day.
+     * @throws java.time.DateTimeException if the text is not a valid date.
+     * @throws NumberFormatException if the text is not in either form.
+     */
+    public static long textDateToEpochDay(String text) {
+        String date = text.trim();
+        int end = 0;
+        while (end < date.length() && date.charAt(end) != ' '
+                && date.charAt(end) != 'T') {
+            end++;
+        }
+        date = date.substring(0, end);
+        if (date.indexOf('-') > 0) {
+            String[] parts = date.split("-", 3);
+            if (parts.length == 3) {
+                return LocalDate.of(Integer.parseInt(parts[0]),
+                        Integer.parseInt(parts[1]),
+                        Integer.parseInt(parts[2])).toEpochDay();
+            }
+        } else if (date.indexOf('/') > 0) {
+            String[] parts = date.split("/", 3);
+            if (parts.length == 3) {
+                return LocalDate.of(Integer.parseInt(parts[2]),
+                        Integer.parseInt(parts[0]),
+                        Integer.parseInt(parts[1])).toEpochDay();
+            }
+        }
+        throw new NumberFormatException("Not a date: " + text);
     }
 
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+/**
+ * The format of the file being uploaded.
+ *
+ * @author Paul Wolfgang
+ */
+public enum InputFormat {
+
+    /**
+     * An xlsx workbook, read by a WorkbookSheetReader or StreamingSheetReader.
+     */
+    XLSX,
+    /**
+     * Comma separated values, read by a DelimitedSheetReader. The sheet name
+     * is ignored.
+     */
+    CSV,
+    /**
+     * Tab separated values, read by a DelimitedSheetReader. The sheet name is
+     * ignored.
+     */
+    TSV;
+
+    /**
+     * Determine the format from the extension of a file name. Names ending in
+     * .csv are CSV, names ending in .tsv or .tab are TSV, and all others are
+     * XLSX.
+     *
+     * @param fileName The file name.
+     * @return The format.
+     */
+    public static InputFormat fromFileName(String fileName) {
+        String lowerCaseName = fileName.toLowerCase();
+        if (lowerCaseName.endsWith(".csv")) {
+            return CSV;
+        }
+        if (lowerCaseName.endsWith(".tsv") || lowerCaseName.endsWith(".tab")) {
+            return TSV;
+        }
+        return XLSX;
+    }
+
+}
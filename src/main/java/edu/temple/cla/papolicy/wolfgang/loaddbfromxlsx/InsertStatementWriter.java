@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import edu.temple.cla.policydb.dbutilities.DBUtil;
+import static edu.temple.cla.policydb.dbutilities.DBUtil.doubleQuotes;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.StringJoiner;
+import org.apache.log4j.Logger;
+
+/**
+ * RowWriter that builds multi-row INSERT statements as SQL text. Each value
+ * is formatted as an SQL literal and the statement is sent once its UTF-8
+ * encoding reaches the size chosen by a BatchSizer, which starts at
+ * 10,000,000 bytes or the server's max_allowed_packet if that is smaller.
+ *
+ * @author Paul Wolfgang
+ */
+public class InsertStatementWriter implements RowWriter {
+
+    private static final Logger LOGGER = Logger.getLogger(InsertStatementWriter.class);
+    private static final int INITIAL_STATEMENT_BYTES = 10000000;
+
+    private final Statement stmt;
+    private final String sqlInsertStatement;
+    private final List<ColumnMetaData> columns;
+    private final UploadMetrics metrics;
+    private final BatchSizer sizer;
+    private int rowsInStatement;
+    private long bytesInStatement;
+    private StringJoiner values = new StringJoiner(",\n");
+
+    /**
+     * Constructor.
+     *
+     * @param conn The database connection.
+     * @param tableName Name of the destination table.
+     * @param columns The metadata of the columns being loaded.
+     * @param metrics The metrics that record each statement sent.
+     * @throws SQLException If the statement cannot be created.
+     */
+    public InsertStatementWriter(Connection conn, String tableName,
+            List<ColumnMetaData> columns, UploadMetrics metrics) throws SQLException {
+        this.stmt = conn.createStatement();
+        this.sqlInsertStatement = DBUtil.buildSqlInsertStatement(tableName, columns);
+        this.columns = columns;
+        this.metrics = metrics;
+        this.sizer = BatchSizer.forStatements("INSERT", conn, INITIAL_STATEMENT_BYTES);
+    }
+
+    @Override
+    public void write(ConvertedRow row) throws SQLException {
+        String valuesList = toValuesList(row, columns);
+        long rowBytes = BatchSizer.utf8Length(valuesList) + 2;
+        if (!sizer.fits(bytesInStatement, rowBytes)) {
+            flush();
+        }
+        values.add(valuesList);
+        rowsInStatement++;
+        bytesInStatement += rowBytes;
+        if (sizer.isFull(bytesInStatement)) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        if (values.length() == 0) {
+            return;
+        }
+        String insert = sqlInsertStatement + "\n" + values.toString();
+        values = new StringJoiner(",\n");
+        int rows = rowsInStatement;
+        long bytes = bytesInStatement;
+        rowsInStatement = 0;
+        bytesInStatement = 0;
+        try {
+            long start = System.nanoTime();
+            stmt.executeUpdate(insert);
+            long nanos = System.nanoTime() - start;
+            metrics.batchSent(rows, nanos);
+            sizer.batchSent(bytes, nanos);
+        } catch (SQLException sqlex) {
+            LOGGER.error("INSERT of " + rows + " rows failed", sqlex);
+            LOGGER.debug(insert);
+            throw sqlex;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        stmt.close();
+    }
+
+    /**
+     * Format a converted row as a parenthesized list of SQL literals.
+     *
+     * @param row The converted row.
+     * @param columns The metadata of the columns being loaded.
+     * @return The values list.
+     */
+    public static String toValuesList(ConvertedRow row, List<ColumnMetaData> columns) {
+        StringJoiner valuesList = new StringJoiner(", ", "(", ")");
+        for (int i = 0; i < row.size(); i++) {
+            if (row.isNull(i)) {
+                valuesList.add("NULL");
+                continue;
+            }
+            switch (columns.get(i).getDataType()) {
+                case java.sql.Types.CHAR:
+                case java.sql.Types.VARCHAR:
+                case java.sql.Types.LONGVARCHAR:
+                    valuesList.add("\'" + doubleQuotes(row.getObject(i).toString()) + "\'");
+                    break;
+                case java.sql.Types.TIMESTAMP:
+                case java.sql.Types.DATE:
+                    valuesList.add("'" + DateStringCache.format(row.getLong(i)) + "'");
+                    break;
+                case java.sql.Types.REAL:
+                case java.sql.Types.DOUBLE:
+                    valuesList.add(Double.toString(row.getDouble(i)));
+                    break;
+                case java.sql.Types.BIT:
+                case java.sql.Types.TINYINT:
+                case java.sql.Types.SMALLINT:
+                case java.sql.Types.INTEGER:
+                    valuesList.add(Long.toString(row.getLong(i)));
+                    break;
+                default:
+                    valuesList.add(row.getObject(i).toString());
+                    break;
+            }
+        }
+        return valuesList.toString();
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * ShardRouter that routes each row on the value of a key column. With range
+ * routing the shards hold consecutive ranges of the key: shard i holds the
+ * keys below upperBounds[i] that are not in an earlier shard, and the last
+ * shard holds the rest. With hash routing an integer or date key k goes to
+ * shard k mod n, a floating point key is first rounded down, and any other
+ * key goes to the shard given by its String hashCode mod n. Range routing
+ * requires a numeric or date key; dates are compared as days since
+ * 1970-01-01. A row with no value for the key cannot be routed.
+ *
+ * @author Paul Wolfgang
+ */
+public class KeyShardRouter implements ShardRouter {
+
+    private final String keyColumn;
+    private final long[] upperBounds;
+
+    private KeyShardRouter(String keyColumn, long[] upperBounds) {
+        this.keyColumn = keyColumn;
+        this.upperBounds = upperBounds;
+    }
+
+    /**
+     * Create a router that routes on the hash of a key column.
+     *
+     * @param keyColumn The name of the key column.
+     * @return The router.
+     */
+    public static KeyShardRouter byHash(String keyColumn) {
+        return new KeyShardRouter(keyColumn, null);
+    }
+
+    /**
+     * Create a router that routes on ranges of a key column.
+     *
+     * @param keyColumn The name of the key column.
+     * @param upperBounds The exclusive upper bound of each shard but the last,
+     * in ascending order.
+     * @return The router.
+     * @throws IllegalArgumentException if the bounds are not in ascending
+     * order.
+     */
+    public static KeyShardRouter byRange(String keyColumn, long... upperBounds) {
+        for (int i = 1; i < upperBounds.length; i++) {
+            if (upperBounds[i] <= upperBounds[i - 1]) {
+                throw new IllegalArgumentException(
+                        "Shard bounds must be in ascending order");
+            }
+        }
+        return new KeyShardRouter(keyColumn, upperBounds.clone());
+    }
+
+    @Override
+    public ToIntFunction<ConvertedRow> bind(List<ColumnMetaData> columns, int shards)
+            throws SQLException {
+        for (int index = 0; index < columns.size(); index++) {
+            ColumnMetaData column = columns.get(index);
+            if (column.getColumnName().equalsIgnoreCase(keyColumn)) {
+                return upperBounds == null
+                        ? hashRoute(index, column.getDataType(), shards)
+                        : rangeRoute(index, column.getDataType(), shards);
+            }
+        }
+        throw new SQLException("Shard key column " + keyColumn
+                + " is not loaded from the sheet");
+    }
+
+    /**
+     * Create the function that routes on the hash of the key.
+     *
+     * @param keyIndex The position of the key in the row.
+     * @param columnType The java.sql.Types type of the key column.
+     * @param shards The number of shards.
+     * @return The routing function.
+     */
+    ToIntFunction<ConvertedRow> hashRoute(int keyIndex, int columnType, int shards) {
+        if (isFloatingPoint(columnType)) {
+            return row -> (int) Math.floorMod(
+                    (long) Math.floor(row.getDouble(checkKey(row, keyIndex))), shards);
+        }
+        if (isInteger(columnType)) {
+            return row -> (int) Math.floorMod(row.getLong(checkKey(row, keyIndex)), shards);
+        }
+        return row -> Math.floorMod(
+                row.getObject(checkKey(row, keyIndex)).toString().hashCode(), shards);
+    }
+
+    /**
+     * Create the function that routes on ranges of the key.
+     *
+     * @param keyIndex The position of the key in the row.
+     * @param columnType The java.sql.Types type of the key column.
+     * @param shards The number of shards.
+     * @return The routing function.
+     * @throws SQLException If the key column is not numeric.
+     * @throws IllegalArgumentException if the number of bounds is not one less
+     * than the number of shards.
+     */
+    ToIntFunction<ConvertedRow> rangeRoute(int keyIndex, int columnType, int shards)
+            throws SQLException {
+        if (upperBounds.length != shards - 1) {
+            throw new IllegalArgumentException(shards + " shards need "
+                    + (shards - 1) + " bounds, not " + upperBounds.length);
+        }
+        if (isFloatingPoint(columnType)) {
+            return row -> shardOf((long) Math.floor(
+                    row.getDouble(checkKey(row, keyIndex))));
+        }
+        if (isInteger(columnType)) {
+            return row -> shardOf(row.getLong(checkKey(row, keyIndex)));
+        }
+        throw new SQLException("Shard key column " + keyColumn
+                + " must be numeric for range routing");
+    }
+
+    private int shardOf(long key) {
+        int position = Arrays.binarySearch(upperBounds, key);
+        return position >= 0 ? position + 1 : -position - 1;
+    }
+
+    private int checkKey(ConvertedRow row, int keyIndex) {
+        if (row.isNull(keyIndex)) {
+            throw new IllegalArgumentException("Row " + (row.getRowNum() + 1)
+                    + " has no value for shard key " + keyColumn);
+        }
+        return keyIndex;
+    }
+
+    private static boolean isFloatingPoint(int columnType) {
+        return columnType == java.sql.Types.REAL || columnType == java.sql.Types.DOUBLE;
+    }
+
+    private static boolean isInteger(int columnType) {
+        switch (columnType) {
+            case java.sql.Types.BIT:
+            case java.sql.Types.TINYINT:
+            case java.sql.Types.SMALLINT:
+            case java.sql.Types.INTEGER:
+            case java.sql.Types.DATE:
+            case java.sql.Types.TIMESTAMP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * RowWriter that executes a PreparedStatement, such as an UPDATE or DELETE
+ * keyed on the primary key, for each row in batches. Each parameter of the
+ * statement is bound to one value of the converted row. If requireMatch is
+ * set, a row for which the statement matches no rows of the table is an
+ * error. Connector/J reports the rows matched rather than the rows changed
+ * unless the connection sets useAffectedRows.
+ *
+ * @author Paul Wolfgang
+ */
+public class KeyedStatementWriter implements RowWriter {
+
+    private final String sql;
+    private final PreparedStatement stmt;
+    private final int[] parameterIndexes;
+    private final int[] columnTypes;
+    private final int batchSize;
+    private final UploadMetrics metrics;
+    private final boolean requireMatch;
+    private int rowsInBatch;
+
+    /**
+     * Constructor.
+     *
+     * @param conn The database connection.
+     * @param sql The statement.
+     * @param parameterIndexes The index in the converted row of the value of
+     * each parameter.
+     * @param columnTypes The java.sql.Types type of each value of the row.
+     * @param batchSize The number of rows sent in each executeBatch.
+     * @param metrics The metrics that record each batch sent.
+     * @throws SQLException If the statement cannot be prepared.
+     */
+    public KeyedStatementWriter(Connection conn, String sql, int[] parameterIndexes,
+            int[] columnTypes, int batchSize, UploadMetrics metrics) throws SQLException {
+        this(conn, sql, parameterIndexes, columnTypes, batchSize, metrics, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param conn The database connection.
+     * @param sql The statement.
+     * @param parameterIndexes The index in the converted row of the value of
+     * each parameter.
+     * @param columnTypes The java.sql.Types type of each value of the row.
+     * @param batchSize The number of rows sent in each executeBatch.
+     * @param metrics The metrics that record each batch sent.
+     * @param requireMatch true if flush is to fail when the statement matches
+     * no rows for one of the rows of the batch.
+     * @throws SQLException If the statement cannot be prepared.
+     */
+    public KeyedStatementWriter(Connection conn, String sql, int[] parameterIndexes,
+            int[] columnTypes, int batchSize, UploadMetrics metrics,
+            boolean requireMatch) throws SQLException {
+        this.sql = sql;
+        this.stmt = conn.prepareStatement(sql);
+        this.parameterIndexes = parameterIndexes;
+        this.columnTypes = columnTypes;
+        this.batchSize = batchSize;
+        this.metrics = metrics;
+        this.requireMatch = requireMatch;
+    }
+
+    @Override
+    public void write(ConvertedRow row) throws SQLException {
+        for (int i = 0; i < parameterIndexes.length; i++) {
+            int index = parameterIndexes[i];
+            PreparedStatementWriter.bind(stmt, i + 1, columnTypes[index], row, index);
+        }
+        stmt.addBatch();
+        if (++rowsInBatch >= batchSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        if (rowsInBatch == 0) {
+            return;
+        }
+        int rows = rowsInBatch;
+        rowsInBatch = 0;
+        long start = System.nanoTime();
+        int[] counts = stmt.executeBatch();
+        metrics.batchSent(rows, System.nanoTime() - start);
+        if (requireMatch) {
+            // Statement.SUCCESS_NO_INFO is negative, so only a count of 0 fails.
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    throw new SQLException("Row " + (i + 1) + " of a batch of "
+                            + rows + " matched no row: " + sql);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        stmt.close();
+    }
+
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.util.List;
+import java.util.StringJoiner;
+import org.apache.log4j.Logger;
+
+/**
+ * RowWriter that bulk loads a MySQL table with LOAD DATA LOCAL INFILE. The
+ * converted rows are encoded as tab separated lines in an in-memory buffer
+ * which is passed to Connector/J with setLocalInfileInputStream, so no
+ * temporary file or SQL text for the values is needed. The buffer is sent
+ * each time it reaches the size chosen by a BatchSizer, which starts at 16 MB.
+ * The file is streamed to the server in packets, so unlike the other writers
+ * the size is not limited by max_allowed_packet.
+ * <p>
+ * With LOCAL the server skips rows that duplicate a unique key rather than
+ * failing the statement. The number of rows the server reports as inserted
+ * is compared with the number sent, and the difference is counted in the
+ * UploadMetrics as rows rejected. The warnings of each statement are logged,
+ * up to MAX_LOGGED_WARNINGS of them, followed by the number not logged.
+ *
+ * @author Paul Wolfgang
+ */
+public class LoadDataWriter implements RowWriter {
+
+    private static final Logger LOGGER = Logger.getLogger(LoadDataWriter.class);
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024 * 1024;
+    private static final int MIN_BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_BUFFER_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The number of warnings logged for each LOAD DATA statement.
+     */
+    static final int MAX_LOGGED_WARNINGS = 10;
+
+    private final Statement stmt;
+    private final com.mysql.jdbc.Statement mysqlStmt;
+    private final String loadDataStatement;
+    private final int[] columnTypes;
+    private final UploadMetrics metrics;
+    private final BatchSizer sizer = new BatchSizer("LOAD DATA",
+            INITIAL_BUFFER_SIZE, MIN_BUFFER_SIZE, MAX_BUFFER_SIZE);
+    private final Buffer buffer = new Buffer();
+    private final Writer out = new BufferedWriter(
+            new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+    private int rowsInBuffer;
+
+    /**
+     * Constructor.
+     *
+     * @param conn The database connection. This must be a MySQL Connector/J
+     * connection.
+     * @param tableName Name of the destination table.
+     * @param columns The metadata of the columns being loaded.
+     * @param metrics The metrics that record each LOAD DATA statement.
+     * @throws SQLException If the statement cannot be created or the
+     * connection is not a Connector/J connection.
+     */
+    public LoadDataWriter(Connection conn, String tableName,
+            List<ColumnMetaData> columns, UploadMetrics metrics) throws SQLException {
+        this.stmt = conn.createStatement();
+        if (!stmt.isWrapperFor(com.mysql.jdbc.Statement.class)) {
+            stmt.close();
+            throw new SQLException("LOAD DATA mode requires MySQL Connector/J");
+        }
+        this.mysqlStmt = stmt.unwrap(com.mysql.jdbc.Statement.class);
+        this.loadDataStatement = buildLoadDataStatement(tableName, columns);
+        this.metrics = metrics;
+        this.columnTypes = new int[columns.size()];
+        for (int i = 0; i < columnTypes.length; i++) {
+            columnTypes[i] = columns.get(i).getDataType();
+        }
+    }
+
+    /**
+     * Build the LOAD DATA statement. BIT columns are read into a user
+     * variable and converted with CAST since LOAD DATA would otherwise store
+     * the character code of the digit.
+     *
+     * @param tableName Name of the destination table.
+     * @param columns The metadata of the columns being loaded.
+     * @return The LOAD DATA statement.
+     */
+    static String buildLoadDataStatement(String tableName, List<ColumnMetaData> columns) {
+        StringJoiner columnList = new StringJoiner(", ", "(", ")");
+        StringJoiner setList = new StringJoiner(", ", " SET ", "");
+        setList.setEmptyValue("");
+        for (int i = 0; i < columns.size(); i++) {
+            String columnName = "`" + columns.get(i).getColumnName() + "`";
+            if (columns.get(i).getDataType() == java.sql.Types.BIT) {
+                String variable = "@v" + i;
+                columnList.add(variable);
+                setList.add(columnName + " = CAST(" + variable + " AS UNSIGNED)");
+            } else {
+                columnList.add(columnName);
+            }
+        }
+        return "LOAD DATA LOCAL INFILE 'upload.tsv' INTO TABLE " + tableName
+                + " CHARACTER SET utf8mb4"
+                + " FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\'"
+                + " LINES TERMINATED BY '\\n' "
+                + columnList.toString() + setList.toString();
+    }
+
+    @Override
+    public void write(ConvertedRow row) throws SQLException {
+        try {
+            for (int i = 0; i < row.size(); i++) {
+                if (i > 0) {
+                    out.write('\t');
+                }
+                if (row.isNull(i)) {
+                    out.write("\\N");
+                    continue;
+                }
+                switch (columnTypes[i]) {
+                    case java.sql.Types.BIT:
+                    case java.sql.Types.TINYINT:
+                    case java.sql.Types.SMALLINT:
+                    case java.sql.Types.INTEGER:
+                        out.write(Long.toString(row.getLong(i)));
+                        break;
+                    case java.sql.Types.REAL:
+                    case java.sql.Types.DOUBLE:
+                        out.write(Double.toString(row.getDouble(i)));
+                        break;
+                    case java.sql.Types.TIMESTAMP:
+                    case java.sql.Types.DATE:
+                        out.write(DateStringCache.format(row.getLong(i)));
+                        break;
+                    default:
+                        appendEscaped(out, row.getObject(i).toString());
+                        break;
+                }
+            }
+            out.write('\n');
+        } catch (IOException ioex) {
+            throw new SQLException("Unable to buffer row " + (row.getRowNum() + 1), ioex);
+        }
+        rowsInBuffer++;
+        if (sizer.isFull(buffer.size())) {
+            flush();
+        }
+    }
+
+    /**
+     * Write a field value with the characters that have special meaning to
+     * LOAD DATA escaped with a backslash.
+     *
+     * @param out The destination.
+     * @param value The field value.
+     * @throws IOException If the destination throws an IOException.
+     */
+    static void appendEscaped(Writer out, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\0':
+                    out.write("\\0");
+                    break;
+                default:
+                    out.write(c);
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        if (rowsInBuffer == 0) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException ioex) {
+            throw new SQLException("Unable to buffer rows", ioex);
+        }
+        int rows = rowsInBuffer;
+        mysqlStmt.setLocalInfileInputStream(buffer.toInputStream());
+        try {
+            long start = System.nanoTime();
+            int inserted = stmt.executeUpdate(loadDataStatement);
+            long nanos = System.nanoTime() - start;
+            metrics.batchSent(rows, nanos);
+            sizer.batchSent(buffer.size(), nanos);
+            if (inserted < rows) {
+                metrics.rowsRejected(rows - inserted);
+                LOGGER.warn("LOAD DATA of " + rows + " rows inserted " + inserted
+                        + "; " + (rows - inserted) + " rows were rejected");
+            }
+            logWarnings(rows);
+        } catch (SQLException sqlex) {
+            LOGGER.error("LOAD DATA of " + rows + " rows failed", sqlex);
+            throw sqlex;
+        } finally {
+            mysqlStmt.setLocalInfileInputStream(null);
+            buffer.reset();
+            rowsInBuffer = 0;
+        }
+    }
+
+    /**
+     * Log the warnings of the last statement and clear them. The server keeps
+     * at most max_error_count warnings, so there may have been more.
+     */
+    private void logWarnings(int rows) throws SQLException {
+        int count = 0;
+        for (SQLWarning warning = stmt.getWarnings(); warning != null;
+                warning = warning.getNextWarning()) {
+            if (++count <= MAX_LOGGED_WARNINGS) {
+                LOGGER.warn("LOAD DATA of " + rows + " rows: " + warning.getMessage());
+            }
+        }
+        if (count > MAX_LOGGED_WARNINGS) {
+            LOGGER.warn("LOAD DATA of " + rows + " rows: "
+                    + (count - MAX_LOGGED_WARNINGS) + " more warnings");
+        }
+        if (count > 0) {
+            stmt.clearWarnings();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        stmt.close();
+    }
+
+    /**
+     * ByteArrayOutputStream that can be read without copying its contents.
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+/**
+ * A hash map from long keys to long values held in two primitive arrays with
+ * open addressing and linear probing, so that each entry takes between 16
+ * and 32 bytes rather than the roughly 80 bytes of a HashMap entry with boxed
+ * Long keys and values. Entries are accessed through their slot so that a
+ * value can be read and replaced with one lookup. Entries cannot be removed.
+ *
+ * @author Paul Wolfgang
+ */
+public class LongLongHashMap {
+
+    private static final long EMPTY = 0L;
+    private static final double MAX_LOAD = 0.75;
+
+    private long[] keys;
+    private long[] values;
+    private int bits;
+    private int size;
+    private boolean hasEmptyKey;
+
+    /**
+     * Constructor.
+     *
+     * @param expectedSize The number of entries expected.
+     */
+    public LongLongHashMap(int expectedSize) {
+        bits = 4;
+        while ((1 << bits) * MAX_LOAD < expectedSize) {
+            bits++;
+        }
+        allocate();
+    }
+
+    private void allocate() {
+        // The extra slot at the end holds the entry for the key EMPTY.
+        keys = new long[(1 << bits) + 1];
+        values = new long[(1 << bits) + 1];
+    }
+
+    private int home(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+    }
+
+    /**
+     * Find the slot that holds a key.
+     *
+     * @param key The key.
+     * @return The slot, or -1 if the key is not in the map.
+     */
+    public int indexOf(long key) {
+        if (key == EMPTY) {
+            return hasEmptyKey ? keys.length - 1 : -1;
+        }
+        int mask = (1 << bits) - 1;
+        for (int slot = home(key);; slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == key) {
+                return slot;
+            }
+            if (k == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Get the value in a slot.
+     *
+     * @param slot A slot returned by indexOf.
+     * @return The value.
+     */
+    public long valueAt(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Replace the value in a slot.
+     *
+     * @param slot A slot returned by indexOf.
+     * @param value The new value.
+     */
+    public void setValueAt(int slot, long value) {
+        values[slot] = value;
+    }
+
+    /**
+     * Add an entry or replace the value of an existing entry.
+     *
+     * @param key The key.
+     * @param value The value.
+     */
+    public void put(long key, long value) {
+        if (key == EMPTY) {
+            if (!hasEmptyKey) {
+                hasEmptyKey = true;
+                size++;
+            }
+            values[keys.length - 1] = value;
+            return;
+        }
+        int mask = (1 << bits) - 1;
+        int slot = home(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > (1 << bits) * MAX_LOAD) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        bits++;
+        allocate();
+        int mask = (1 << bits) - 1;
+        for (int i = 0; i < oldKeys.length - 1; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = home(oldKeys[i]);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+        values[keys.length - 1] = oldValues[oldKeys.length - 1];
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "LongLongHashMap[size=" + size + ", capacity=" + (1 << bits) + "]";
+    }
+
+}
@@ -7,7 +7,17 @@ package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
 
 import edu.temple.cla.policydb.dbutilities.SimpleDataSource;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import javax.sql.DataSource;
 import org.apache.log4j.Logger;
 
@@ -28,6 +38,19 @@ public class Main {
 
     private static final Logger LOGGER = Logger.getLogger(Main.class);
 
+    /**
+     * The upload registries by file, so that the jobs of a batch share one.
+     */
+    private static final Map<Path, UploadRegistry> REGISTRIES
+            = new ConcurrentHashMap<>();
+
+    /**
+     * The connection pools of the shards by DataSource parameter file, so
+     * that the jobs of a batch share the connections of each shard.
+     */
+    private static final Map<Path, ConnectionPool> SHARD_POOLS
+            = new ConcurrentHashMap<>();
+
     /**
      * Main class.
      *
@@ -35,19 +58,262 @@ public class Main {
      * <dl>
      * <dt>args[0]</dt><dd>Text file containing DataSource parameters.</dd>
      * <dt>args[1]</dt><dd>The name of the table.</dd>
-     * <dt>args[2]</dt><dd>The name of the xlsx file.</dd>
+     * <dt>args[2]</dt><dd>The name of the xlsx file, or of a CSV or TSV
+     * file if the name ends in .csv, .tsv or .tab.</dd>
      * <dt>args[3]</dt><dd>The name of the sheet in the workbook containing the
-     * data</dd>
+     * data. Ignored for a CSV or TSV file.</dd>
+     * <dt>args[4...]</dt><dd>Optional settings of the form --name or
+     * --name=value:
+     * <dl>
+     * <dt>--format=xlsx|csv|tsv</dt><dd>The format of the file, if it is not
+     * the one implied by its name.</dd>
+     * <dt>--streaming</dt><dd>Read the sheet with the streaming (SAX)
+     * reader.</dd>
+     * <dt>--mode=insert|batch|load_data</dt><dd>Write rows as multi-row INSERT
+     * statements (the default), with PreparedStatement batches, or with MySQL
+     * LOAD DATA LOCAL INFILE.</dd>
+     * <dt>--load=append|replace|delta</dt><dd>Add the rows to the table (the
+     * default), replace its contents by loading a staging table that is
+     * swapped with it when the load is complete, or write only the rows that
+     * are new or changed.</dd>
+     * <dt>--key=column,...</dt><dd>The columns on which rows are matched in
+     * delta mode. The default is the primary key.</dd>
+     * <dt>--deleteMissing</dt><dd>In delta mode, delete the rows whose keys
+     * are not in the sheet.</dd>
+     * <dt>--batchSize=n</dt><dd>The maximum number of rows per batch in
+     * batch mode, and the number of rows per commit with --resume.</dd>
+     * <dt>--converters=n</dt><dd>The number of threads that convert rows.</dd>
+     * <dt>--writers=n</dt><dd>The number of threads, each with its own
+     * connection, that write rows.</dd>
+     * <dt>--queueSize=n</dt><dd>The number of rows each pipeline queue holds
+     * before the stage feeding it waits.</dd>
+     * <dt>--mappedStrings</dt><dd>Read the sheet with the streaming reader
+     * and hold the shared strings in memory-mapped temporary files.</dd>
+     * <dt>--resume</dt><dd>Commit every batchSize rows with a checkpoint so
+     * that a failed upload can be resumed by running it again.</dd>
+     * <dt>--shards=file,...</dt><dd>Text files containing the DataSource
+     * parameters of the databases that each hold part of the table. Requires
+     * --shardKey.</dd>
+     * <dt>--shardKey=column[:bound,...]</dt><dd>The column whose value
+     * chooses the shard of each row. With bounds, shard i holds the keys below
+     * the i-th bound and the last shard the rest; otherwise an integer key k
+     * goes to shard k mod n.</dd>
+     * <dt>--registry=file</dt><dd>The file recording the last content
+     * uploaded into each table. An upload of the same content into a table
+     * whose columns have not changed is skipped.</dd>
+     * </dl></dd>
+     * </dl>
+     * Alternatively, to load several sheets in one run:
+     * <dl>
+     * <dt>args[0]</dt><dd>Text file containing DataSource parameters.</dd>
+     * <dt>args[1]</dt><dd>--manifest=file, where each line of the file lists
+     * a workbook, sheet and table separated by tabs or commas.</dd>
+     * <dt>args[2...]</dt><dd>The optional settings above, which apply to
+     * every job, and --jobs=n, the number of jobs run at once.</dd>
      * </dl>
      */
     public static void main(String[] args) {
+        if (args.length > 1 && args[1].startsWith("--manifest=")) {
+            if (!runBatch(args)) {
+                System.exit(1);
+            }
+            return;
+        }
         try {
             DataSource dataSource = new SimpleDataSource(args[0]);
             DoUpload doUpload = new DoUpload(dataSource);
+            doUpload.setInputFormat(InputFormat.fromFileName(args[2]));
+            applyOptions(doUpload, Arrays.asList(args).subList(4, args.length));
             InputStream input = new FileInputStream(args[2]);
             doUpload.run(input, args[3], args[1]);
         } catch (Exception ex) {
             LOGGER.error("Error occured", ex);
+        } finally {
+            closeShardPools();
+        }
+    }
+
+    /**
+     * Run the jobs listed in a manifest and print a report of their status
+     * and timing.
+     *
+     * @param args The command line arguments.
+     * @return true if every job succeeded.
+     */
+    private static boolean runBatch(String[] args) {
+        String manifest = args[1].substring("--manifest=".length());
+        int threads = BatchLoader.DEFAULT_JOBS;
+        List<String> options = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].startsWith("--jobs=")) {
+                threads = Integer.parseInt(args[i].substring("--jobs=".length()));
+            } else {
+                options.add(args[i]);
+            }
+        }
+        // The pool never holds more connections than were in use at once.
+        try (ConnectionPool pool = new ConnectionPool(
+                new SimpleDataSource(args[0]), Integer.MAX_VALUE)) {
+            Consumer<DoUpload> configuration
+                    = doUpload -> applyOptions(doUpload, options);
+            configuration.accept(new DoUpload(pool));
+            List<BatchLoader.Job> jobs = BatchLoader.readManifest(Paths.get(manifest));
+            long startNanos = System.nanoTime();
+            List<BatchLoader.JobResult> results
+                    = new BatchLoader(pool, threads, configuration).run(jobs);
+            String report = BatchLoader.report(results, System.nanoTime() - startNanos);
+            LOGGER.info("Batch " + manifest + " complete");
+            System.out.print(report);
+            return results.stream().allMatch(BatchLoader.JobResult::isSuccessful);
+        } catch (Exception ex) {
+            LOGGER.error("Error occured", ex);
+            return false;
+        } finally {
+            closeShardPools();
+        }
+    }
+
+    /**
+     * Get the connection pool of a shard, creating it the first time the
+     * shard is named. Like the pool of a batch, it keeps no more connections
+     * than were in use at once.
+     *
+     * @param file The file containing the DataSource parameters of the shard.
+     * @return The pool.
+     */
+    private static ConnectionPool shardPool(String file) {
+        return SHARD_POOLS.computeIfAbsent(Paths.get(file).toAbsolutePath(), path -> {
+            try {
+                return new ConnectionPool(new SimpleDataSource(file), Integer.MAX_VALUE);
+            } catch (Exception ex) {
+                throw new IllegalArgumentException("Unable to read " + file, ex);
+            }
+        });
+    }
+
+    private static void closeShardPools() {
+        for (ConnectionPool pool : SHARD_POOLS.values()) {
+            try {
+                pool.close();
+            } catch (SQLException sqlex) {
+                LOGGER.warn("Unable to close a shard connection", sqlex);
+            }
+        }
+        SHARD_POOLS.clear();
+    }
+
+    /**
+     * Apply the optional settings from the command line.
+     *
+     * @param doUpload The DoUpload object to be configured.
+     * @param args The arguments of the form --name or --name=value.
+     */
+    private static void applyOptions(DoUpload doUpload, List<String> args) {
+        ShardOptions shardOptions = new ShardOptions();
+        for (String arg : args) {
+            applyOption(doUpload, arg, shardOptions);
+        }
+        if ((shardOptions.shards == null) != (shardOptions.router == null)) {
+            throw new IllegalArgumentException("--shards and --shardKey must be used together");
+        }
+        if (shardOptions.shards != null) {
+            doUpload.setShards(shardOptions.shards, shardOptions.router);
         }
     }
+
+    /**
+     * Apply an optional setting from the command line.
+     *
+     * @param doUpload The DoUpload object to be configured.
+     * @param arg The argument of the form --name or --name=value.
+     * @param shardOptions Collects the --shards and --shardKey settings.
+     */
+    private static void applyOption(DoUpload doUpload, String arg,
+            ShardOptions shardOptions) {
+        String name = arg;
+        String value = null;
+        int posEquals = arg.indexOf('=');
+        if (posEquals != -1) {
+            name = arg.substring(0, posEquals);
+            value = arg.substring(posEquals + 1);
+        }
+        switch (name) {
+            case "--format":
+                doUpload.setInputFormat(InputFormat.valueOf(value.toUpperCase()));
+                break;
+            case "--streaming":
+                doUpload.setStreaming(true);
+                break;
+            case "--mode":
+                doUpload.setWriteMode(WriteMode.valueOf(value.toUpperCase()));
+                break;
+            case "--load":
+                doUpload.setLoadMode(LoadMode.valueOf(value.toUpperCase()));
+                break;
+            case "--key":
+                doUpload.setKeyColumns(Arrays.asList(value.split(",")));
+                break;
+            case "--deleteMissing":
+                doUpload.setDeleteMissing(true);
+                break;
+            case "--batchSize":
+                doUpload.setBatchSize(Integer.parseInt(value));
+                break;
+            case "--converters":
+                doUpload.setConverterThreads(Integer.parseInt(value));
+                break;
+            case "--writers":
+                doUpload.setWriterThreads(Integer.parseInt(value));
+                break;
+            case "--queueSize":
+                doUpload.setQueueCapacity(Integer.parseInt(value));
+                break;
+            case "--mappedStrings":
+                doUpload.setMappedSharedStrings(true);
+                break;
+            case "--resume":
+                doUpload.setResumable(true);
+                break;
+            case "--registry":
+                doUpload.setUploadRegistry(REGISTRIES.computeIfAbsent(
+                        Paths.get(value).toAbsolutePath(), file -> {
+                            try {
+                                return new UploadRegistry(file);
+                            } catch (IOException ex) {
+                                throw new IllegalArgumentException(
+                                        "Unable to read " + file, ex);
+                            }
+                        }));
+                break;
+            case "--shards":
+                shardOptions.shards = new ArrayList<>();
+                for (String file : value.split(",")) {
+                    shardOptions.shards.add(shardPool(file));
+                }
+                break;
+            case "--shardKey":
+                int posColon = value.indexOf(':');
+                if (posColon == -1) {
+                    shardOptions.router = KeyShardRouter.byHash(value);
+                } else {
+                    shardOptions.router = KeyShardRouter.byRange(
+                            value.substring(0, posColon),
+                            Arrays.stream(value.substring(posColon + 1).split(","))
+                                    .mapToLong(Long::parseLong).toArray());
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unrecognized option: " + arg);
+        }
+    }
+
+    /**
+     * The shard settings, which are applied together once all the options
+     * have been read.
+     */
+    private static class ShardOptions {
+
+        private List<DataSource> shards;
+        private ShardRouter router;
+    }
 }
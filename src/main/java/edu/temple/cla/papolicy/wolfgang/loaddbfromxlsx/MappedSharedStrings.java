@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.log4j.Logger;
+import org.apache.poi.util.SAXHelper;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * SharedStrings held in memory-mapped temporary files rather than on the
+ * heap. While the shared strings XML is parsed each string is appended to a
+ * data file as its UTF-8 length and bytes, and its offset is appended to an
+ * index file. Both files are then mapped read-only and a string is decoded
+ * only when it is looked up, so the heap used does not depend on the amount
+ * of text in the workbook. The data file is mapped in 1 GB segments; a string
+ * that would cross a segment boundary is moved to the start of the next
+ * segment.
+ *
+ * @author Paul Wolfgang
+ */
+public class MappedSharedStrings implements SharedStrings {
+
+    private static final Logger LOGGER = Logger.getLogger(MappedSharedStrings.class);
+    private static final int SEGMENT_SIZE = 1 << 30;
+
+    private final Path dataFile;
+    private final Path indexFile;
+    private final int count;
+    private final MappedByteBuffer index;
+    private final MappedByteBuffer[] segments;
+
+    private MappedSharedStrings(Path dataFile, Path indexFile, int count)
+            throws IOException {
+        this.dataFile = dataFile;
+        this.indexFile = indexFile;
+        this.count = count;
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(SEGMENT_SIZE, size - start));
+            }
+        }
+    }
+
+    /**
+     * Parse the shared strings XML of a workbook into temporary files.
+     *
+     * @param sharedStringsXml The contents of the sharedStrings.xml part, or
+     * null if the workbook has none.
+     * @return The MappedSharedStrings.
+     * @throws IOException If the temporary files cannot be written.
+     * @throws SAXException If the XML cannot be parsed.
+     */
+    public static MappedSharedStrings load(InputStream sharedStringsXml)
+            throws IOException, SAXException {
+        Path dataFile = Files.createTempFile("strings", ".dat");
+        Path indexFile = Files.createTempFile("strings", ".idx");
+        try {
+            StringsHandler handler;
+            try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(dataFile)));
+                    DataOutputStream offsets = new DataOutputStream(new BufferedOutputStream(
+                            Files.newOutputStream(indexFile)))) {
+                handler = new StringsHandler(data, offsets);
+                if (sharedStringsXml != null) {
+                    XMLReader parser = SAXHelper.newXMLReader();
+                    parser.setContentHandler(handler);
+                    parser.parse(new InputSource(sharedStringsXml));
+                }
+            } catch (SAXException saxex) {
+                if (saxex.getException() instanceof IOException) {
+                    throw (IOException) saxex.getException();
+                }
+                throw saxex;
+            } catch (ParserConfigurationException pcex) {
+                throw new SAXException(pcex);
+            }
+            MappedSharedStrings strings
+                    = new MappedSharedStrings(dataFile, indexFile, handler.count);
+            strings.deleteFiles();
+            return strings;
+        } catch (IOException | SAXException | RuntimeException ex) {
+            Files.deleteIfExists(dataFile);
+            Files.deleteIfExists(indexFile);
+            throw ex;
+        }
+    }
+
+    /**
+     * Get the number of strings.
+     *
+     * @return The number of strings.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String getEntryAt(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Shared string " + index
+                    + " does not exist");
+        }
+        long offset = this.index.getLong(index * 8);
+        ByteBuffer segment = segments[(int) (offset / SEGMENT_SIZE)].duplicate();
+        int position = (int) (offset % SEGMENT_SIZE);
+        int length = segment.getInt(position);
+        byte[] bytes = new byte[length];
+        segment.position(position + 4);
+        segment.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Delete the temporary files. Once the files are mapped the mappings
+     * remain valid after they are deleted on systems that permit this.
+     * Otherwise they are deleted when the JVM exits.
+     */
+    @Override
+    public void close() {
+        deleteFiles();
+    }
+
+    private void deleteFiles() {
+        for (Path file : new Path[]{dataFile, indexFile}) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ioex) {
+                LOGGER.debug("Unable to delete " + file + " now: " + ioex);
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * SAX handler for the sharedStrings.xml part. The text of each si element
+     * is the concatenation of its t elements, which includes the text of rich
+     * text runs and of phonetic runs as ReadOnlySharedStringsTable does.
+     */
+    private static class StringsHandler extends DefaultHandler {
+
+        private final DataOutputStream data;
+        private final DataOutputStream offsets;
+        private final StringBuilder text = new StringBuilder();
+        private boolean collectText;
+        private long position;
+        private int count;
+
+        StringsHandler(DataOutputStream data, DataOutputStream offsets) {
+            this.data = data;
+            this.offsets = offsets;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                Attributes attributes) {
+            switch (localName) {
+                case "si":
+                    text.setLength(0);
+                    break;
+                case "t":
+                    collectText = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collectText) {
+                text.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName)
+                throws SAXException {
+            switch (localName) {
+                case "t":
+                    collectText = false;
+                    break;
+                case "si":
+                    try {
+                        append(text.toString());
+                    } catch (IOException ioex) {
+                        throw new SAXException(ioex);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void append(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            long remaining = SEGMENT_SIZE - position % SEGMENT_SIZE;
+            if (bytes.length + 4 > remaining) {
+                for (long i = 0; i < remaining; i++) {
+                    data.write(0);
+                }
+                position += remaining;
+            }
+            offsets.writeLong(position);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+            position += bytes.length + 4;
+            count++;
+        }
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import edu.temple.cla.policydb.dbutilities.DBUtil;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.StringJoiner;
+import org.apache.log4j.Logger;
+
+/**
+ * RowWriter that binds the converted values to a single-row PreparedStatement
+ * and sends them with addBatch/executeBatch. Values are bound with the setter
+ * that matches the column type, so no escaping or SQL text is needed. When
+ * the connection is a MySQL Connector/J connection rewriteBatchedStatements
+ * is enabled so that each batch is sent as a multi-row INSERT, and restored
+ * to its previous value when the writer is closed. A batch is sent
+ * when it reaches the maximum number of rows or the size chosen by a
+ * BatchSizer, estimated from the length of the values as SQL literals.
+ *
+ * @author Paul Wolfgang
+ */
+public class PreparedStatementWriter implements RowWriter {
+
+    private static final Logger LOGGER = Logger.getLogger(PreparedStatementWriter.class);
+    private static final int INITIAL_BATCH_BYTES = 1024 * 1024;
+    private static final int NUMBER_BYTES = 20;
+    private static final int DATE_BYTES = 12;
+
+    private final Connection conn;
+    private final boolean restoreRewrite;
+    private final PreparedStatement stmt;
+    private final int[] columnTypes;
+    private final int batchSize;
+    private final UploadMetrics metrics;
+    private final BatchSizer sizer;
+    private int rowsInBatch;
+    private long bytesInBatch;
+    private int firstRowInBatch;
+
+    /**
+     * Constructor.
+     *
+     * @param conn The database connection.
+     * @param tableName Name of the destination table.
+     * @param columns The metadata of the columns being loaded.
+     * @param batchSize The maximum number of rows sent in each executeBatch.
+     * @param metrics The metrics that record each batch sent.
+     * @throws SQLException If the statement cannot be prepared.
+     */
+    public PreparedStatementWriter(Connection conn, String tableName,
+            List<ColumnMetaData> columns, int batchSize, UploadMetrics metrics)
+            throws SQLException {
+        this.conn = conn;
+        this.restoreRewrite = enableRewriteBatchedStatements(conn);
+        StringJoiner parameters = new StringJoiner(", ", "(", ")");
+        columnTypes = new int[columns.size()];
+        for (int i = 0; i < columnTypes.length; i++) {
+            columnTypes[i] = columns.get(i).getDataType();
+            parameters.add("?");
+        }
+        String sql = DBUtil.buildSqlInsertStatement(tableName, columns)
+                + "\n" + parameters.toString();
+        this.stmt = conn.prepareStatement(sql);
+        this.batchSize = batchSize;
+        this.metrics = metrics;
+        this.sizer = BatchSizer.forStatements("Batch", conn, INITIAL_BATCH_BYTES);
+    }
+
+    /**
+     * Turn on rewriteBatchedStatements if the connection is a Connector/J
+     * connection. Connector/J checks this property when executeBatch is
+     * called, so it may be set after the connection is opened.
+     *
+     * @param conn The database connection.
+     * @return true if the property was turned on and must be turned off
+     * again when the writer is closed.
+     */
+    static boolean enableRewriteBatchedStatements(Connection conn) {
+        try {
+            if (conn.isWrapperFor(com.mysql.jdbc.Connection.class)) {
+                com.mysql.jdbc.Connection mysqlConn
+                        = conn.unwrap(com.mysql.jdbc.Connection.class);
+                if (!mysqlConn.getRewriteBatchedStatements()) {
+                    mysqlConn.setRewriteBatchedStatements(true);
+                    return true;
+                }
+            }
+        } catch (SQLException | RuntimeException ex) {
+            LOGGER.debug("Unable to set rewriteBatchedStatements: " + ex);
+        }
+        return false;
+    }
+
+    /**
+     * Turn rewriteBatchedStatements off again, so that a pooled connection
+     * is returned with the setting it was given.
+     *
+     * @param conn The database connection.
+     */
+    static void restoreRewriteBatchedStatements(Connection conn) {
+        try {
+            conn.unwrap(com.mysql.jdbc.Connection.class)
+                    .setRewriteBatchedStatements(false);
+        } catch (SQLException | RuntimeException ex) {
+            LOGGER.debug("Unable to restore rewriteBatchedStatements: " + ex);
+        }
+    }
+
+    @Override
+    public void write(ConvertedRow row) throws SQLException {
+        if (rowsInBatch == 0) {
+            firstRowInBatch = row.getRowNum();
+        }
+        long rowBytes = 3;
+        for (int i = 0; i < columnTypes.length; i++) {
+            rowBytes += bind(stmt, i + 1, columnTypes[i], row, i) + 2;
+        }
+        stmt.addBatch();
+        rowsInBatch++;
+        bytesInBatch += rowBytes;
+        if (rowsInBatch >= batchSize || sizer.isFull(bytesInBatch)) {
+            flush();
+        }
+    }
+
+    /**
+     * Bind a value to a parameter with the setter that matches the column
+     * type.
+     *
+     * @param stmt The statement.
+     * @param parameterIndex The one based parameter index.
+     * @param columnType The java.sql.Types type of the column.
+     * @param row The converted row.
+     * @param index The index of the value in the row.
+     * @return The estimated length of the value as an SQL literal.
+     * @throws SQLException If the value cannot be bound.
+     */
+    static int bind(PreparedStatement stmt, int parameterIndex, int columnType,
+            ConvertedRow row, int index) throws SQLException {
+        if (row.isNull(index)) {
+            stmt.setNull(parameterIndex, columnType);
+            return 4;
+        }
+        switch (columnType) {
+            case java.sql.Types.BIT:
+            case java.sql.Types.TINYINT:
+            case java.sql.Types.SMALLINT:
+            case java.sql.Types.INTEGER:
+                stmt.setLong(parameterIndex, row.getLong(index));
+                return NUMBER_BYTES;
+            case java.sql.Types.REAL:
+            case java.sql.Types.DOUBLE:
+                stmt.setDouble(parameterIndex, row.getDouble(index));
+                return NUMBER_BYTES;
+            case java.sql.Types.DATE:
+                stmt.setDate(parameterIndex,
+                        java.sql.Date.valueOf(LocalDate.ofEpochDay(row.getLong(index))));
+                return DATE_BYTES;
+            case java.sql.Types.TIMESTAMP:
+                stmt.setTimestamp(parameterIndex, Timestamp.valueOf(
+                        LocalDate.ofEpochDay(row.getLong(index)).atStartOfDay()));
+                return DATE_BYTES + 9;
+            default:
+                String value = row.getObject(index).toString();
+                stmt.setString(parameterIndex, value);
+                return BatchSizer.utf8Length(value) + 2;
+        }
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        if (rowsInBatch == 0) {
+            return;
+        }
+        int rows = rowsInBatch;
+        long bytes = bytesInBatch;
+        rowsInBatch = 0;
+        bytesInBatch = 0;
+        try {
+            long start = System.nanoTime();
+            stmt.executeBatch();
+            long nanos = System.nanoTime() - start;
+            metrics.batchSent(rows, nanos);
+            sizer.batchSent(bytes, nanos);
+        } catch (SQLException sqlex) {
+            LOGGER.error("Batch of " + rows + " rows starting at row "
+                    + (firstRowInBatch + 1) + " failed", sqlex);
+            throw sqlex;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            stmt.close();
+        } finally {
+            if (restoreRewrite) {
+                restoreRewriteBatchedStatements(conn);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+/**
+ * Receives the rows of a worksheet from a SheetReader, in sheet order.
+ *
+ * @author Paul Wolfgang
+ */
+@FunctionalInterface
+public interface RowHandler {
+
+    /**
+     * Process one row.
+     *
+     * @param row The row.
+     * @throws Exception If the row cannot be processed. Reading stops and the
+     * exception is thrown from SheetReader.read.
+     */
+    void handleRow(SheetRow row) throws Exception;
+
+    /**
+     * Determine whether a row is wanted. The reader calls this before it
+     * builds the row, so rows that are not wanted cost as little as possible.
+     *
+     * @param rowIndex The zero based row index.
+     * @return true if handleRow should be called for the row.
+     */
+    default boolean wantsRow(int rowIndex) {
+        return true;
+    }
+
+    /**
+     * Determine whether a column is wanted. The reader calls this for each
+     * cell of a wanted row before it reads the cell's value, and omits the
+     * cells of columns that are not wanted from the row. The answer may change
+     * once the header row has been handled.
+     *
+     * @param columnIndex The zero based column index.
+     * @return true if the cells of the column should be included.
+     */
+    default boolean wantsColumn(int columnIndex) {
+        return true;
+    }
+
+}
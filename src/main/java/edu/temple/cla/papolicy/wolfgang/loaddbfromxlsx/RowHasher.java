@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Computes 64-bit hashes of the values of a ConvertedRow, and reads rows of a
+ * table into ConvertedRows, so that rows from a sheet can be compared with
+ * rows already in the database. Values are hashed by their converted form:
+ * integers and dates as longs, REAL columns at float precision, DOUBLE
+ * columns with -0.0 equal to 0.0, and everything else as a string.
+ *
+ * @author Paul Wolfgang
+ */
+public final class RowHasher {
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long NULL_HASH = 0x6A09E667F3BCC909L;
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private RowHasher() {
+    }
+
+    /**
+     * Compute the hash of some of the values of a row.
+     *
+     * @param row The row.
+     * @param indexes The indexes of the values to hash.
+     * @param columnTypes The java.sql.Types type of each value of the row.
+     * @return The hash.
+     */
+    public static long hash(ConvertedRow row, int[] indexes, int[] columnTypes) {
+        long h = SEED;
+        for (int index : indexes) {
+            h = mix(h + valueHash(row, index, columnTypes[index]));
+        }
+        return h;
+    }
+
+    private static long valueHash(ConvertedRow row, int index, int columnType) {
+        if (row.isNull(index)) {
+            return NULL_HASH;
+        }
+        switch (columnType) {
+            case java.sql.Types.BIT:
+            case java.sql.Types.TINYINT:
+            case java.sql.Types.SMALLINT:
+            case java.sql.Types.INTEGER:
+            case java.sql.Types.DATE:
+            case java.sql.Types.TIMESTAMP:
+                return row.getLong(index);
+            case java.sql.Types.REAL:
+                return Double.doubleToLongBits((float) row.getDouble(index));
+            case java.sql.Types.DOUBLE:
+                double value = row.getDouble(index);
+                return Double.doubleToLongBits(value == 0.0 ? 0.0 : value);
+            default:
+                String s = row.getObject(index).toString();
+                long h = FNV_OFFSET;
+                for (int i = 0; i < s.length(); i++) {
+                    h = (h ^ s.charAt(i)) * FNV_PRIME;
+                }
+                return h ^ s.length();
+        }
+    }
+
+    /**
+     * The MurmurHash3 64-bit finalizer.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Read the current row of a ResultSet into a ConvertedRow in the form
+     * produced by the ColumnConverters.
+     *
+     * @param rs The ResultSet.
+     * @param positions The index in the ConvertedRow of each column of the
+     * ResultSet.
+     * @param columnTypes The java.sql.Types type of each value of the
+     * ConvertedRow.
+     * @param size The size of the ConvertedRow.
+     * @return The ConvertedRow. Values not in the ResultSet are null.
+     * @throws SQLException If a value cannot be read.
+     */
+    public static ConvertedRow readRow(ResultSet rs, int[] positions,
+            int[] columnTypes, int size) throws SQLException {
+        ConvertedRow row = new ConvertedRow(rs.getRow(), size);
+        for (int i = 0; i < positions.length; i++) {
+            int index = positions[i];
+            switch (columnTypes[index]) {
+                case java.sql.Types.BIT:
+                case java.sql.Types.TINYINT:
+                case java.sql.Types.SMALLINT:
+                case java.sql.Types.INTEGER:
+                    long longValue = rs.getLong(i + 1);
+                    if (!rs.wasNull()) {
+                        row.setLong(index, longValue);
+                    }
+                    break;
+                case java.sql.Types.REAL:
+                case java.sql.Types.DOUBLE:
+                    double doubleValue = rs.getDouble(i + 1);
+                    if (!rs.wasNull()) {
+                        row.setDouble(index, doubleValue);
+                    }
+                    break;
+                case java.sql.Types.DATE:
+                    java.sql.Date date = rs.getDate(i + 1);
+                    if (date != null) {
+                        row.setLong(index, date.toLocalDate().toEpochDay());
+                    }
+                    break;
+                case java.sql.Types.TIMESTAMP:
+                    Timestamp timestamp = rs.getTimestamp(i + 1);
+                    if (timestamp != null) {
+                        row.setLong(index,
+                                timestamp.toLocalDateTime().toLocalDate().toEpochDay());
+                    }
+                    break;
+                default:
+                    row.setObject(index, rs.getString(i + 1));
+                    break;
+            }
+        }
+        return row;
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToIntFunction;
+import javax.sql.DataSource;
+import org.apache.log4j.Logger;
+
+/**
+ * RowWriter that distributes the rows of one upload among several databases.
+ * Each shard has a writer thread with its own connection and RowWriter, fed
+ * through a bounded queue, so all the shards are loaded at once in a single
+ * pass over the sheet. The rows written to each shard are committed
+ * independently; if one shard fails the others stop at their next row, but
+ * the batches they have already written remain.
+ *
+ * @author Paul Wolfgang
+ */
+public class ShardedWriter implements RowWriter {
+
+    private static final Logger LOGGER = Logger.getLogger(ShardedWriter.class);
+    private static final ConvertedRow END_OF_ROWS = new ConvertedRow(-1, 0);
+
+    private final DoUpload doUpload;
+    private final ToIntFunction<ConvertedRow> router;
+    private final String tableName;
+    private final List<ColumnMetaData> columns;
+    private final UploadMetrics metrics;
+    private final List<BlockingQueue<ConvertedRow>> queues = new ArrayList<>();
+    private final List<Future<?>> writers = new ArrayList<>();
+    private final long[] rowsPerShard;
+    private final ExecutorService writerPool;
+    private volatile Exception failure;
+    private boolean finished;
+
+    /**
+     * Constructor. Starts a writer thread for each shard.
+     *
+     * @param doUpload The DoUpload that creates the writers.
+     * @param shards The DataSource of each shard.
+     * @param router Gives the shard index of each row.
+     * @param tableName Name of the destination table on every shard.
+     * @param columns The metadata of the columns being loaded.
+     * @param queueCapacity The capacity of each shard's queue, in rows.
+     * @param metrics The metrics of the upload.
+     */
+    public ShardedWriter(DoUpload doUpload, List<DataSource> shards,
+            ToIntFunction<ConvertedRow> router, String tableName,
+            List<ColumnMetaData> columns, int queueCapacity, UploadMetrics metrics) {
+        this.doUpload = doUpload;
+        this.router = router;
+        this.tableName = tableName;
+        this.columns = columns;
+        this.metrics = metrics;
+        this.rowsPerShard = new long[shards.size()];
+        writerPool = Executors.newFixedThreadPool(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            int shard = i;
+            DataSource dataSource = shards.get(i);
+            BlockingQueue<ConvertedRow> queue = new ArrayBlockingQueue<>(queueCapacity);
+            queues.add(queue);
+            writers.add(writerPool.submit(() -> {
+                write(shard, dataSource, queue);
+                return null;
+            }));
+        }
+    }
+
+    @Override
+    public void write(ConvertedRow row) throws SQLException {
+        checkFailure();
+        int shard = router.applyAsInt(row);
+        if (shard < 0 || shard >= queues.size()) {
+            throw new IllegalStateException("Row " + (row.getRowNum() + 1)
+                    + " routed to shard " + shard + " of " + queues.size());
+        }
+        put(queues.get(shard), row);
+    }
+
+    /**
+     * Wait for every shard to write its rows.
+     *
+     * @throws SQLException If a shard failed.
+     */
+    @Override
+    public void flush() throws SQLException {
+        finish();
+        checkFailure();
+        LOGGER.info("Rows written to each shard of " + tableName + ": "
+                + Arrays.toString(rowsPerShard));
+    }
+
+    /**
+     * Stop the writer threads. If flush has not been called, the rows that
+     * have not yet been written are discarded.
+     *
+     * @throws SQLException If a shard failed.
+     */
+    @Override
+    public void close() throws SQLException {
+        if (!finished) {
+            if (failure == null) {
+                failure = new SQLException("Sharded upload abandoned");
+            }
+            finish();
+        }
+    }
+
+    private void finish() throws SQLException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            for (BlockingQueue<ConvertedRow> queue : queues) {
+                put(queue, END_OF_ROWS);
+            }
+            for (Future<?> writer : writers) {
+                try {
+                    writer.get();
+                } catch (ExecutionException ex) {
+                    fail(ex.getCause());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted waiting for shards", ex);
+                }
+            }
+        } finally {
+            writerPool.shutdownNow();
+        }
+    }
+
+    private void write(int shard, DataSource dataSource,
+            BlockingQueue<ConvertedRow> queue) throws InterruptedException {
+        boolean ended = false;
+        try (Connection conn = dataSource.getConnection();
+                RowWriter writer = doUpload.createWriter(conn, tableName, columns, metrics)) {
+            ConvertedRow row;
+            while ((row = queue.take()) != END_OF_ROWS) {
+                if (failure == null) {
+                    writer.write(row);
+                    rowsPerShard[shard]++;
+                }
+            }
+            ended = true;
+            if (failure == null) {
+                writer.flush();
+            }
+        } catch (SQLException | RuntimeException ex) {
+            LOGGER.error("Error writing to shard " + shard + " (" + dataSource + ")", ex);
+            fail(ex);
+        }
+        while (!ended && queue.take() != END_OF_ROWS) {
+            // discard the remaining rows
+        }
+    }
+
+    private void fail(Throwable ex) {
+        if (failure == null) {
+            failure = ex instanceof Exception ? (Exception) ex : new Exception(ex);
+        }
+    }
+
+    private void checkFailure() throws SQLException {
+        Exception ex = failure;
+        if (ex instanceof SQLException) {
+            throw (SQLException) ex;
+        }
+        if (ex != null) {
+            throw new SQLException("Sharded upload failed", ex);
+        }
+    }
+
+    private static void put(BlockingQueue<ConvertedRow> queue, ConvertedRow row)
+            throws SQLException {
+        try {
+            queue.put(row);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted", ex);
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.IOException;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+
+/**
+ * The shared strings table of a workbook, which holds the values of the cells
+ * of type s.
+ *
+ * @author Paul Wolfgang
+ */
+public interface SharedStrings extends AutoCloseable {
+
+    /**
+     * Get a string.
+     *
+     * @param index The zero based index of the string in the table.
+     * @return The string.
+     */
+    String getEntryAt(int index);
+
+    /**
+     * Release the resources used by the table.
+     *
+     * @throws IOException If a temporary file cannot be deleted.
+     */
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Adapt a POI ReadOnlySharedStringsTable, which holds the strings on the
+     * heap.
+     *
+     * @param table The POI table.
+     * @return The SharedStrings.
+     */
+    static SharedStrings of(ReadOnlySharedStringsTable table) {
+        return new SharedStrings() {
+            @Override
+            public String getEntryAt(int index) {
+                return table.getEntryAt(index);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.util.CellAddress;
+
+/**
+ * The value of a single worksheet cell. Instances are produced by a
+ * SheetReader either from the POI object model or directly from the sheet XML,
+ * so that the conversion code does not depend on how the workbook was read.
+ *
+ * @author Paul Wolfgang
+ */
+public class SheetCell {
+
+    private final int rowIndex;
+    private final int columnIndex;
+    private final CellType cellType;
+    private final double numericValue;
+    private final String stringValue;
+    private final boolean booleanValue;
+
+    private SheetCell(int rowIndex, int columnIndex, CellType cellType,
+            double numericValue, String stringValue, boolean booleanValue) {
+        this.rowIndex = rowIndex;
+        this.columnIndex = columnIndex;
+        this.cellType = cellType;
+        this.numericValue = numericValue;
+        this.stringValue = stringValue;
+        this.booleanValue = booleanValue;
+    }
+
+    /**
+     * Create a cell that contains no value.
+     *
+     * @param rowIndex The zero based row index.
+     * @param columnIndex The zero based column index.
+     * @param cellType One of BLANK, ERROR, FORMULA or _NONE.
+     * @return The new cell.
+     */
+    public static SheetCell ofType(int rowIndex, int columnIndex, CellType cellType) {
+        return new SheetCell(rowIndex, columnIndex, cellType, 0.0, null, false);
+    }
+
+    /**
+     * Create a NUMERIC cell.
+     *
+     * @param rowIndex The zero based row index.
+     * @param columnIndex The zero based column index.
+     * @param value The numeric value.
+     * @return The new cell.
+     */
+    public static SheetCell ofNumeric(int rowIndex, int columnIndex, double value) {
+        return new SheetCell(rowIndex, columnIndex, CellType.NUMERIC, value, null, false);
+    }
+
+    /**
+     * Create a STRING cell.
+     *
+     * @param rowIndex The zero based row index.
+     * @param columnIndex The zero based column index.
+     * @param value The string value.
+     * @return The new cell.
+     */
+    public static SheetCell ofString(int rowIndex, int columnIndex, String value) {
+        return new SheetCell(rowIndex, columnIndex, CellType.STRING, 0.0, value, false);
+    }
+
+    /**
+     * Create a BOOLEAN cell.
+     *
+     * @param rowIndex The zero based row index.
+     * @param columnIndex The zero based column index.
+     * @param value The boolean value.
+     * @return The new cell.
+     */
+    public static SheetCell ofBoolean(int rowIndex, int columnIndex, boolean value) {
+        return new SheetCell(rowIndex, columnIndex, CellType.BOOLEAN, 0.0, null, value);
+    }
+
+    /**
+     * Create a SheetCell from a POI cell.
+     *
+     * @param cell The POI cell.
+     * @return The equivalent SheetCell.
+     */
+    public static SheetCell of(Cell cell) {
+        int rowIndex = cell.getRowIndex();
+        int columnIndex = cell.getColumnIndex();
+        CellType cellType = cell.getCellTypeEnum();
+        switch (cellType) {
+            case NUMERIC:
+                return ofNumeric(rowIndex, columnIndex, cell.getNumericCellValue());
+            case STRING:
+                return ofString(rowIndex, columnIndex, cell.getStringCellValue());
+            case BOOLEAN:
+                return ofBoolean(rowIndex, columnIndex, cell.getBooleanCellValue());
+            default:
+                return ofType(rowIndex, columnIndex, cellType);
+        }
+    }
+
+    public int getRowIndex() {
+        return rowIndex;
+    }
+
+    public int getColumnIndex() {
+        return columnIndex;
+    }
+
+    public CellType getCellTypeEnum() {
+        return cellType;
+    }
+
+    public CellAddress getAddress() {
+        return new CellAddress(rowIndex, columnIndex);
+    }
+
+    public double getNumericCellValue() {
+        return numericValue;
+    }
+
+    public boolean getBooleanCellValue() {
+        return booleanValue;
+    }
+
+    /**
+     * Get the value of a STRING cell. As with the POI Cell a BLANK cell
+     * returns the empty string.
+     *
+     * @return The string value.
+     * @throws IllegalStateException if the cell is not STRING or BLANK.
+     */
+    public String getStringCellValue() {
+        switch (cellType) {
+            case STRING:
+                return stringValue;
+            case BLANK:
+                return "";
+            default:
+                throw new IllegalStateException("Cannot get a STRING value from a "
+                        + cellType + " cell");
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+/**
+ * Reads the rows of one worksheet of an xlsx workbook.
+ *
+ * @author Paul Wolfgang
+ */
+public interface SheetReader {
+
+    /**
+     * Read the sheet and pass each row to the handler.
+     *
+     * @param input Input stream containing the xlsx file.
+     * @param sheetName Worksheet name containing the data.
+     * @param handler The handler that receives the rows.
+     * @throws Exception If the workbook cannot be read, the sheet does not
+     * exist, or the handler throws an exception.
+     */
+    void read(InputStream input, String sheetName, RowHandler handler)
+            throws Exception;
+
+    /**
+     * Read the sheet from an xlsx file and pass each row to the handler.
+     *
+     * @param file The xlsx file.
+     * @param sheetName Worksheet name containing the data.
+     * @param handler The handler that receives the rows.
+     * @throws Exception If the workbook cannot be read, the sheet does not
+     * exist, or the handler throws an exception.
+     */
+    default void read(File file, String sheetName, RowHandler handler)
+            throws Exception {
+        try (InputStream input = new FileInputStream(file)) {
+            read(input, sheetName, handler);
+        }
+    }
+
+}
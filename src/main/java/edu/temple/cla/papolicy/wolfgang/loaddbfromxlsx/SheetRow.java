@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.IntPredicate;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+
+/**
+ * A worksheet row as a list of the cells it contains, in column order. Cells
+ * that are not present in the sheet are not included.
+ *
+ * @author Paul Wolfgang
+ */
+public class SheetRow implements Iterable<SheetCell> {
+
+    private final int rowIndex;
+    private final List<SheetCell> cells;
+
+    /**
+     * Constructor.
+     *
+     * @param rowIndex The zero based row index.
+     * @param cells The cells in this row.
+     */
+    public SheetRow(int rowIndex, List<SheetCell> cells) {
+        this.rowIndex = rowIndex;
+        this.cells = cells;
+    }
+
+    /**
+     * Create a SheetRow from a POI row.
+     *
+     * @param row The POI row.
+     * @return The equivalent SheetRow.
+     */
+    public static SheetRow of(Row row) {
+        return of(row, columnIndex -> true);
+    }
+
+    /**
+     * Create a SheetRow from the cells of a POI row that are in the wanted
+     * columns. The values of the other cells are not read.
+     *
+     * @param row The POI row.
+     * @param wantsColumn Predicate on the zero based column index.
+     * @return The SheetRow containing the wanted cells.
+     */
+    public static SheetRow of(Row row, IntPredicate wantsColumn) {
+        List<SheetCell> cells = new ArrayList<>();
+        for (Cell cell : row) {
+            if (wantsColumn.test(cell.getColumnIndex())) {
+                cells.add(SheetCell.of(cell));
+            }
+        }
+        return new SheetRow(row.getRowNum(), cells);
+    }
+
+    public int getRowNum() {
+        return rowIndex;
+    }
+
+    public int size() {
+        return cells.size();
+    }
+
+    @Override
+    public Iterator<SheetCell> iterator() {
+        return cells.iterator();
+    }
+
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import org.apache.log4j.Logger;
+
+/**
+ * A copy of a MySQL table that is loaded and then swapped with the table.
+ * The copy is created with CREATE TABLE ... LIKE and its secondary indexes
+ * are dropped, so the load only maintains the primary key. When the load is
+ * complete the indexes are rebuilt with a single ALTER TABLE and the tables
+ * are exchanged with one atomic RENAME TABLE, so readers see either the old
+ * contents or the new contents, never a partial load. Since CREATE TABLE ...
+ * LIKE does not copy foreign keys, tables that have or are referenced by
+ * foreign keys are not supported. Tables with triggers are also refused,
+ * since the triggers would stay with the old table and be dropped with it.
+ * <p>
+ * The staging and old tables are given names that are unique to each load,
+ * and a load refuses to start if either name is already in use, so a table
+ * that happens to have one of these names is never dropped. Only one load may
+ * replace a table at a time; this is enforced with a MySQL named lock, so it
+ * also holds between processes. The lock is released by swap or drop.
+ * <p>
+ * The table itself is not locked while the staging table is loaded. Rows
+ * that other programs write to the table during the load are not copied to
+ * the staging table, so they are lost when the tables are swapped.
+ *
+ * @author Paul Wolfgang
+ */
+public class StagingTable {
+
+    private static final Logger LOGGER = Logger.getLogger(StagingTable.class);
+    private static final int MAX_NAME_LENGTH = 64;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final String LOCK_NAME
+            = "CONCAT('replace_', LEFT(SHA2(CONCAT(DATABASE(), '.', ?), 256), 48))";
+
+    private final Connection conn;
+    private final String tableName;
+    private final String stagingName;
+    private final String oldName;
+    private final Map<String, IndexDefinition> droppedIndexes = new LinkedHashMap<>();
+    private boolean locked;
+    private boolean created;
+
+    /**
+     * Constructor.
+     *
+     * @param conn The database connection used for the DDL statements.
+     * @param tableName Name of the table being replaced.
+     */
+    public StagingTable(Connection conn, String tableName) {
+        this.conn = conn;
+        this.tableName = tableName;
+        String nonce = String.format("%08x", RANDOM.nextInt());
+        this.stagingName = uniqueName(tableName, "_staging_" + nonce);
+        this.oldName = uniqueName(tableName, "_old_" + nonce);
+    }
+
+    /**
+     * Append a suffix to a table name, shortening the name if the result
+     * would be longer than a MySQL identifier may be.
+     */
+    private static String uniqueName(String tableName, String suffix) {
+        int length = Math.min(tableName.length(), MAX_NAME_LENGTH - suffix.length());
+        return tableName.substring(0, length) + suffix;
+    }
+
+    /**
+     * Get the name of the staging table, into which the rows are loaded.
+     *
+     * @return The name of the staging table.
+     */
+    public String getName() {
+        return stagingName;
+    }
+
+    /**
+     * Take the lock on the table, create the staging table and drop its
+     * secondary indexes.
+     *
+     * @throws SQLException If another load is replacing the table, the table
+     * has foreign keys or triggers, the name of the staging or old table is in use, or a
+     * statement fails.
+     */
+    public void create() throws SQLException {
+        lock();
+        checkForeignKeys();
+        checkTriggers();
+        checkUnused(stagingName);
+        checkUnused(oldName);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE " + stagingName + " LIKE " + tableName);
+            created = true;
+            readIndexes(stmt);
+            if (!droppedIndexes.isEmpty()) {
+                StringJoiner drops = new StringJoiner(", ");
+                droppedIndexes.keySet().forEach(name -> drops.add("DROP INDEX `" + name + "`"));
+                stmt.executeUpdate("ALTER TABLE " + stagingName + " " + drops);
+            }
+        }
+        LOGGER.info("Created " + stagingName + " without "
+                + droppedIndexes.size() + " secondary indexes");
+    }
+
+    /**
+     * Take the named lock that allows one load at a time to replace the
+     * table. The lock name is a hash of the schema and table name, since it
+     * may be at most 64 characters long.
+     */
+    private void lock() throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT GET_LOCK(" + LOCK_NAME + ", 0)")) {
+            stmt.setString(1, tableName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                locked = rs.next() && rs.getInt(1) == 1;
+            }
+        }
+        if (!locked) {
+            throw new SQLException("Table " + tableName
+                    + " is being replaced by another load");
+        }
+    }
+
+    private void unlock() {
+        if (!locked) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT RELEASE_LOCK(" + LOCK_NAME + ")")) {
+            stmt.setString(1, tableName);
+            stmt.executeQuery().close();
+            locked = false;
+        } catch (SQLException sqlex) {
+            LOGGER.error("Unable to release the lock on " + tableName, sqlex);
+        }
+    }
+
+    private void checkUnused(String name) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*)"
+                + " FROM information_schema.TABLES"
+                + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?")) {
+            stmt.setString(1, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next() && rs.getInt(1) > 0) {
+                    throw new SQLException("Table " + name
+                            + " already exists and was not created by this load");
+                }
+            }
+        }
+    }
+
+    private void checkForeignKeys() throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*)"
+                + " FROM information_schema.REFERENTIAL_CONSTRAINTS"
+                + " WHERE CONSTRAINT_SCHEMA = DATABASE()"
+                + " AND (TABLE_NAME = ? OR REFERENCED_TABLE_NAME = ?)")) {
+            stmt.setString(1, tableName);
+            stmt.setString(2, tableName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next() && rs.getInt(1) > 0) {
+                    throw new SQLException("Table " + tableName
+                            + " has foreign keys and cannot be replaced");
+                }
+            }
+        }
+    }
+
+    private void checkTriggers() throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*)"
+                + " FROM information_schema.TRIGGERS"
+                + " WHERE EVENT_OBJECT_SCHEMA = DATABASE()"
+                + " AND EVENT_OBJECT_TABLE = ?")) {
+            stmt.setString(1, tableName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next() && rs.getInt(1) > 0) {
+                    throw new SQLException("Table " + tableName
+                            + " has triggers and cannot be replaced");
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the definitions of the secondary indexes of the staging table.
+     * Indexes on expressions are left in place since they cannot be rebuilt
+     * from SHOW INDEX, and so are indexes whose first column is the
+     * AUTO_INCREMENT column, since MySQL does not allow the last of these to
+     * be dropped. The comment and, on MySQL 8, the visibility of each index
+     * are kept.
+     */
+    private void readIndexes(Statement stmt) throws SQLException {
+        String autoIncrementColumn = findAutoIncrementColumn();
+        Map<String, IndexDefinition> indexes = new LinkedHashMap<>();
+        try (ResultSet rs = stmt.executeQuery("SHOW INDEX FROM " + stagingName)) {
+            boolean hasVisible = hasColumn(rs.getMetaData(), "Visible");
+            while (rs.next()) {
+                String keyName = rs.getString("Key_name");
+                if (keyName.equals("PRIMARY")) {
+                    continue;
+                }
+                IndexDefinition index = indexes.computeIfAbsent(keyName,
+                        name -> new IndexDefinition());
+                String columnName = rs.getString("Column_name");
+                if (columnName == null) {
+                    index.rebuildable = false;
+                    continue;
+                }
+                if (rs.getInt("Seq_in_index") == 1
+                        && columnName.equalsIgnoreCase(autoIncrementColumn)) {
+                    index.rebuildable = false;
+                }
+                index.unique = rs.getInt("Non_unique") == 0;
+                index.type = rs.getString("Index_type");
+                index.comment = rs.getString("Index_comment");
+                index.invisible = hasVisible && "NO".equals(rs.getString("Visible"));
+                String part = "`" + columnName + "`";
+                int subPart = rs.getInt("Sub_part");
+                if (!rs.wasNull()) {
+                    part += "(" + subPart + ")";
+                }
+                if ("D".equals(rs.getString("Collation"))) {
+                    part += " DESC";
+                }
+                index.columns.add(part);
+            }
+        }
+        indexes.forEach((name, index) -> {
+            if (index.rebuildable) {
+                droppedIndexes.put(name, index);
+            }
+        });
+    }
+
+    private String findAutoIncrementColumn() throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT COLUMN_NAME"
+                + " FROM information_schema.COLUMNS"
+                + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?"
+                + " AND EXTRA LIKE '%auto_increment%'")) {
+            stmt.setString(1, tableName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private static boolean hasColumn(ResultSetMetaData metaData, String label)
+            throws SQLException {
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (label.equalsIgnoreCase(metaData.getColumnLabel(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rebuild the secondary indexes, swap the staging table with the table,
+     * drop the old table and release the lock.
+     *
+     * Once the tables have been renamed the new contents are in place, so a
+     * failure to drop the old table is only logged as a warning, and the old
+     * table must then be dropped by hand.
+     *
+     * @throws SQLException If an index cannot be rebuilt, for example because
+     * the rows violate a unique index, or the tables cannot be renamed. The
+     * table is unchanged in that case, and drop must still be called.
+     */
+    public void swap() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            if (!droppedIndexes.isEmpty()) {
+                StringJoiner adds = new StringJoiner(", ");
+                droppedIndexes.forEach((name, index) -> adds.add(index.toAddClause(name)));
+                long start = System.nanoTime();
+                stmt.executeUpdate("ALTER TABLE " + stagingName + " " + adds);
+                LOGGER.info(String.format("Rebuilt %d indexes of %s in %.1f s",
+                        droppedIndexes.size(), stagingName,
+                        (System.nanoTime() - start) / 1.0e9));
+            }
+            // RENAME TABLE fails if oldName has been created since create.
+            stmt.executeUpdate("RENAME TABLE " + tableName + " TO " + oldName
+                    + ", " + stagingName + " TO " + tableName);
+            created = false;
+        }
+        LOGGER.info("Replaced " + tableName + " with " + stagingName);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DROP TABLE " + oldName);
+        } catch (SQLException sqlex) {
+            LOGGER.warn("Unable to drop " + oldName + ", the table replaced by "
+                    + stagingName, sqlex);
+        }
+        unlock();
+    }
+
+    /**
+     * Drop the staging table after a failed load and release the lock.
+     */
+    public void drop() {
+        if (created) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DROP TABLE " + stagingName);
+                created = false;
+            } catch (SQLException sqlex) {
+                LOGGER.error("Unable to drop " + stagingName, sqlex);
+            }
+        }
+        unlock();
+    }
+
+    /**
+     * The definition of a secondary index.
+     */
+    private static class IndexDefinition {
+
+        private final StringJoiner columns = new StringJoiner(", ", "(", ")");
+        private boolean unique;
+        private String type;
+        private String comment;
+        private boolean invisible;
+        private boolean rebuildable = true;
+
+        String toAddClause(String name) {
+            String kind;
+            if ("FULLTEXT".equals(type)) {
+                kind = "FULLTEXT INDEX";
+            } else if ("SPATIAL".equals(type)) {
+                kind = "SPATIAL INDEX";
+            } else {
+                kind = unique ? "UNIQUE INDEX" : "INDEX";
+            }
+            String clause = "ADD " + kind + " `" + name + "` " + columns;
+            if ("HASH".equals(type)) {
+                clause += " USING HASH";
+            }
+            if (comment != null && !comment.isEmpty()) {
+                clause += " COMMENT '" + comment.replace("\\", "\\\\")
+                        .replace("'", "''") + "'";
+            }
+            if (invisible) {
+                clause += " INVISIBLE";
+            }
+            return clause;
+        }
+    }
+
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * SheetReader that parses the sheet XML with a SAX parser using the POI event
+ * API. Rows are passed to the handler as they are parsed, so the memory
+ * required does not depend on the number of rows in the sheet. The input is
+ * first copied to a temporary file since OPCPackage would otherwise hold the
+ * entire uncompressed package in memory. The bytes parsed are those of the
+ * uncompressed sheet XML. The shared strings table is held on the heap unless
+ * mapped shared strings are selected.
+ *
+ * @author Paul Wolfgang
+ */
+public class StreamingSheetReader implements SheetReader {
+
+    private final UploadMetrics metrics;
+    private boolean mappedSharedStrings;
+
+    /**
+     * Constructor.
+     */
+    public StreamingSheetReader() {
+        this(new UploadMetrics());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param metrics The metrics that count the bytes of the sheet parsed.
+     */
+    public StreamingSheetReader(UploadMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Select where the shared strings table is held. When mappedSharedStrings
+     * is true the strings are written to memory-mapped temporary files by
+     * MappedSharedStrings, so workbooks with a large amount of text can be
+     * read without a large heap.
+     *
+     * @param mappedSharedStrings true to hold the strings in mapped files.
+     */
+    public void setMappedSharedStrings(boolean mappedSharedStrings) {
+        this.mappedSharedStrings = mappedSharedStrings;
+    }
+
+    @Override
+    public void read(InputStream input, String sheetName, RowHandler handler)
+            throws Exception {
+        Path tempFile = Files.createTempFile("upload", ".xlsx");
+        try {
+            Files.copy(input, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            read(tempFile.toFile(), sheetName, handler);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Read the sheet from an xlsx file and pass each row to the handler.
+     *
+     * @param file The xlsx file.
+     * @param sheetName Worksheet name containing the data.
+     * @param handler The handler that receives the rows.
+     * @throws Exception If the workbook cannot be read, the sheet does not
+     * exist, or the handler throws an exception.
+     */
+    @Override
+    public void read(File file, String sheetName, RowHandler handler)
+            throws Exception {
+        OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ);
+        try {
+            XSSFReader xssfReader = new XSSFReader(pkg);
+            try (SharedStrings strings = openSharedStrings(pkg, xssfReader)) {
+                readSheet(xssfReader, strings, sheetName, handler);
+            }
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    /**
+     * Compute the hash of the contents of a sheet. The raw XML of the sheet
+     * and of the shared strings it refers to are digested without being
+     * parsed, so this is much faster than reading the sheet, and the hash
+     * does not change when a workbook is saved again with other sheets
+     * modified.
+     *
+     * @param file The xlsx file.
+     * @param sheetName Worksheet name containing the data.
+     * @return The hash of the sheet contents.
+     * @throws Exception If the workbook cannot be read or the sheet does not
+     * exist.
+     */
+    public static String hashSheet(File file, String sheetName) throws Exception {
+        OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ);
+        try {
+            XSSFReader xssfReader = new XSSFReader(pkg);
+            MessageDigest digest = ContentHash.newDigest();
+            XSSFReader.SheetIterator sheets
+                    = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            boolean found = false;
+            while (sheets.hasNext() && !found) {
+                try (InputStream sheetStream = sheets.next()) {
+                    if (sheetName.equals(sheets.getSheetName())) {
+                        digestStream(sheetStream, digest);
+                        found = true;
+                    }
+                }
+            }
+            if (!found) {
+                throw new Exception("Sheet " + sheetName + " does not exist");
+            }
+            InputStream sharedStringsXml = xssfReader.getSharedStringsData();
+            if (sharedStringsXml != null) {
+                try (InputStream in = sharedStringsXml) {
+                    digestStream(in, digest);
+                }
+            }
+            return ContentHash.toHex(digest.digest());
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    private static void digestStream(InputStream in, MessageDigest digest)
+            throws IOException {
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, n);
+        }
+    }
+
+    private SharedStrings openSharedStrings(OPCPackage pkg, XSSFReader xssfReader)
+            throws Exception {
+        if (!mappedSharedStrings) {
+            return SharedStrings.of(new ReadOnlySharedStringsTable(pkg));
+        }
+        try (InputStream sharedStringsXml = xssfReader.getSharedStringsData()) {
+            return MappedSharedStrings.load(sharedStringsXml);
+        }
+    }
+
+    private void readSheet(XSSFReader xssfReader, SharedStrings strings,
+            String sheetName, RowHandler handler) throws Exception {
+        XSSFReader.SheetIterator sheets
+                = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+        while (sheets.hasNext()) {
+            try (InputStream sheetStream = sheets.next()) {
+                if (sheetName.equals(sheets.getSheetName())) {
+                    parseSheet(new CountingInputStream(sheetStream, metrics),
+                            new SheetHandler(strings, handler));
+                    return;
+                }
+            }
+        }
+        throw new Exception("Sheet " + sheetName + " does not exist");
+    }
+
+    private static void parseSheet(InputStream sheetStream, SheetHandler sheetHandler)
+            throws Exception {
+        XMLReader parser = SAXHelper.newXMLReader();
+        parser.setContentHandler(sheetHandler);
+        try {
+            parser.parse(new InputSource(sheetStream));
+        } catch (SAXException saxex) {
+            if (saxex.getException() != null) {
+                throw saxex.getException();
+            }
+            throw saxex;
+        }
+    }
+
+    /**
+     * SAX handler for the worksheet XML. Builds a SheetRow from the c elements
+     * within each row element. Cell values are taken from the v element or,
+     * for inline strings, the t elements within the is element. The content
+     * of rows and columns that the RowHandler does not want is ignored, so
+     * their text is neither collected nor looked up in the shared strings.
+     */
+    static class SheetHandler extends DefaultHandler {
+
+        /**
+         * The epoch day of 1899-12-30, from which Excel's serial numbers
+         * count for dates from 1900-03-01.
+         */
+        private static final long EXCEL_EPOCH_DAY
+                = LocalDate.of(1899, 12, 30).toEpochDay();
+        private static final long MAR1_1900_SERIAL = 61;
+
+        private final SharedStrings strings;
+        private final RowHandler handler;
+        private final StringBuilder text = new StringBuilder();
+        private List<SheetCell> cells;
+        private int rowIndex = -1;
+        private int columnIndex;
+        private String cellTypeAttribute;
+        private boolean hasFormula;
+        private boolean collectText;
+        private boolean skipRow;
+        private boolean skipCell;
+
+        SheetHandler(SharedStrings strings, RowHandler handler) {
+            this.strings = strings;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                Attributes attributes) {
+            if (skipRow && !localName.equals("row")) {
+                return;
+            }
+            if (skipCell) {
+                return;
+            }
+            switch (localName) {
+                case "row":
+                    String rowNumber = attributes.getValue("r");
+                    rowIndex = rowNumber != null
+                            ? Integer.parseInt(rowNumber) - 1 : rowIndex + 1;
+                    skipRow = !handler.wantsRow(rowIndex);
+                    cells = skipRow ? null : new ArrayList<>();
+                    columnIndex = -1;
+                    break;
+                case "c":
+                    String cellReference = attributes.getValue("r");
+                    columnIndex = cellReference != null
+                            ? columnIndex(cellReference) : columnIndex + 1;
+                    if (!handler.wantsColumn(columnIndex)) {
+                        skipCell = true;
+                        break;
+                    }
+                    cellTypeAttribute = attributes.getValue("t");
+                    hasFormula = false;
+                    text.setLength(0);
+                    break;
+                case "f":
+                    hasFormula = true;
+                    break;
+                case "v":
+                case "t":
+                    collectText = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collectText) {
+                text.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName)
+                throws SAXException {
+            if (skipRow) {
+                skipRow = !localName.equals("row");
+                return;
+            }
+            if (skipCell) {
+                skipCell = !localName.equals("c");
+                return;
+            }
+            switch (localName) {
+                case "v":
+                case "t":
+                    collectText = false;
+                    break;
+                case "c":
+                    cells.add(buildCell());
+                    break;
+                case "row":
+                    try {
+                        handler.handleRow(new SheetRow(rowIndex, cells));
+                    } catch (SAXException saxex) {
+                        throw saxex;
+                    } catch (Exception ex) {
+                        throw new SAXException(ex);
+                    }
+                    cells = null;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Get the zero based column index from a cell reference such as AB12
+         * without creating a CellReference.
+         */
+        static int columnIndex(String cellReference) {
+            int column = 0;
+            for (int i = 0; i < cellReference.length(); i++) {
+                char c = cellReference.charAt(i);
+                if (c < 'A' || c > 'Z') {
+                    break;
+                }
+                column = column * 26 + (c - 'A' + 1);
+            }
+            return column - 1;
+        }
+
+        private SheetCell buildCell() {
+            if (hasFormula) {
+                return SheetCell.ofType(rowIndex, columnIndex, CellType.FORMULA);
+            }
+            String value = text.toString();
+            if (cellTypeAttribute == null) {
+                cellTypeAttribute = "n";
+            }
+            switch (cellTypeAttribute) {
+                case "s":
+                    if (value.isEmpty()) {
+                        return SheetCell.ofType(rowIndex, columnIndex, CellType.BLANK);
+                    }
+                    return SheetCell.ofString(rowIndex, columnIndex,
+                            strings.getEntryAt(Integer.parseInt(value)));
+                case "inlineStr":
+                case "str":
+                    return SheetCell.ofString(rowIndex, columnIndex, value);
+                case "b":
+                    return SheetCell.ofBoolean(rowIndex, columnIndex, "1".equals(value));
+                case "e":
+                    return SheetCell.ofType(rowIndex, columnIndex, CellType.ERROR);
+                case "n":
+                    if (value.isEmpty()) {
+                        return SheetCell.ofType(rowIndex, columnIndex, CellType.BLANK);
+                    }
+                    return SheetCell.ofNumeric(rowIndex, columnIndex,
+                            Double.parseDouble(value));
+                case "d":
+                    if (value.isEmpty()) {
+                        return SheetCell.ofType(rowIndex, columnIndex, CellType.BLANK);
+                    }
+                    try {
+                        return SheetCell.ofNumeric(rowIndex, columnIndex,
+                                isoDateToExcelDate(value));
+                    } catch (DateTimeException ex) {
+                        return SheetCell.ofString(rowIndex, columnIndex, value);
+                    }
+                default:
+                    if (value.isEmpty()) {
+                        return SheetCell.ofType(rowIndex, columnIndex, CellType.BLANK);
+                    }
+                    return SheetCell.ofString(rowIndex, columnIndex, value);
+            }
+        }
+
+        /**
+         * Convert the ISO 8601 value of a date cell (t="d") to the Excel
+         * serial number that the cell would hold in a workbook using the 1900
+         * date system, so that it is converted like any other date. The value
+         * may be a date, a date and time, or a time. Excel counts the
+         * nonexistent 1900-02-29, so earlier dates are one day less than
+         * their days since 1899-12-30.
+         *
+         * @param value The ISO 8601 value.
+         * @return The serial number.
+         * @throws DateTimeException If the value is not a valid date or time.
+         */
+        static double isoDateToExcelDate(String value) {
+            String text = value.endsWith("Z")
+                    ? value.substring(0, value.length() - 1) : value;
+            int posT = text.indexOf('T');
+            String datePart = posT == -1 ? text : text.substring(0, posT);
+            double serial = 0.0;
+            if (!datePart.isEmpty()) {
+                long days = LocalDate.parse(datePart).toEpochDay() - EXCEL_EPOCH_DAY;
+                if (days < MAR1_1900_SERIAL) {
+                    days--;
+                }
+                serial = days;
+            }
+            if (posT != -1) {
+                serial += LocalTime.parse(text.substring(posT + 1)).toNanoOfDay()
+                        / (double) TimeUnit.DAYS.toNanos(1);
+            }
+            return serial;
+        }
+
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import edu.temple.cla.policydb.dbutilities.DBUtil;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * The mapping from the column names in the first row of a sheet to the
+ * columns of a database table. Instances are immutable so that they can be
+ * shared through the TableMetadataCache.
+ *
+ * @author Paul Wolfgang
+ */
+public class TableMapping {
+
+    private final List<String> spreadsheetColumnNames;
+    private final Map<String, String> databaseToSpreadsheetNames;
+    private final ColumnPlan plan;
+
+    private TableMapping(List<String> spreadsheetColumnNames,
+            Map<String, String> databaseToSpreadsheetNames, ColumnPlan plan) {
+        this.spreadsheetColumnNames = spreadsheetColumnNames;
+        this.databaseToSpreadsheetNames = databaseToSpreadsheetNames;
+        this.plan = plan;
+    }
+
+    /**
+     * Build the mapping. Each spreadsheet column name is converted to a legal
+     * database name, since spreadsheets may contain names from an Access
+     * database that are not legal MySQL names, and database columns that do
+     * not correspond to a spreadsheet column are filtered out.
+     *
+     * @param spreadsheetColumnNames The spreadsheet column names by column
+     * index.
+     * @param columns The metadata of the database table's columns.
+     * @return The mapping.
+     */
+    public static TableMapping build(List<String> spreadsheetColumnNames,
+            List<ColumnMetaData> columns) {
+        Map<String, String> databaseToSpreadsheetNames = new HashMap<>();
+        spreadsheetColumnNames.forEach((columnName) -> {
+            String dbColumnName = DBUtil.convertToLegalName(columnName).toString();
+            databaseToSpreadsheetNames.put(dbColumnName, columnName);
+        });
+        List<ColumnMetaData> filteredColumnList = columns.stream()
+                .filter(metadata -> Objects.nonNull(databaseToSpreadsheetNames.get(metadata.getColumnName())))
+                .collect(Collectors.toList());
+        List<String> names = Collections.unmodifiableList(
+                new ArrayList<>(spreadsheetColumnNames));
+        return new TableMapping(names,
+                Collections.unmodifiableMap(databaseToSpreadsheetNames),
+                ColumnPlan.compile(names, databaseToSpreadsheetNames,
+                        Collections.unmodifiableList(filteredColumnList)));
+    }
+
+    /**
+     * Get the spreadsheet column names the mapping was built from.
+     *
+     * @return The spreadsheet column names by column index.
+     */
+    public List<String> getSpreadsheetColumnNames() {
+        return spreadsheetColumnNames;
+    }
+
+    /**
+     * Get the map from database column name to spreadsheet column name.
+     *
+     * @return The unmodifiable map.
+     */
+    public Map<String, String> getDatabaseToSpreadsheetNames() {
+        return databaseToSpreadsheetNames;
+    }
+
+    /**
+     * Get the database columns being loaded.
+     *
+     * @return The unmodifiable filtered list of database columns.
+     */
+    public List<ColumnMetaData> getColumns() {
+        return plan.getColumns();
+    }
+
+    /**
+     * Get the compiled plan for converting rows.
+     *
+     * @return The plan.
+     */
+    public ColumnPlan getPlan() {
+        return plan;
+    }
+
+}
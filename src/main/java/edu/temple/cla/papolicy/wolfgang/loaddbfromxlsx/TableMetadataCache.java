@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+/**
+ * Cache of the column metadata of database tables and of the TableMappings
+ * built from them, so that repeated uploads into the same table do not read
+ * the metadata and rebuild the mapping each time. Entries are keyed by
+ * DataSource and table name. The cache holds at most a fixed number of
+ * tables, evicting the least recently used, and an entry is reloaded once it
+ * is older than the time to live. Entries must be invalidated when the
+ * schema of a table changes. The cache is thread safe; the database is read
+ * without holding its lock, so two threads may occasionally load the same
+ * table.
+ *
+ * @author Paul Wolfgang
+ */
+public class TableMetadataCache {
+
+    /**
+     * The default maximum number of tables.
+     */
+    public static final int DEFAULT_MAX_TABLES = 64;
+
+    /**
+     * The default time to live, in minutes.
+     */
+    public static final long DEFAULT_TIME_TO_LIVE_MINUTES = 10;
+
+    private static final int MAX_MAPPINGS_PER_TABLE = 8;
+
+    private static final TableMetadataCache SHARED = new TableMetadataCache(
+            DEFAULT_MAX_TABLES, DEFAULT_TIME_TO_LIVE_MINUTES, TimeUnit.MINUTES);
+
+    private final long timeToLiveNanos;
+    private final Map<Key, Entry> entries;
+
+    /**
+     * Constructor.
+     *
+     * @param maxTables The maximum number of tables held.
+     * @param timeToLive The time after which a table is reloaded.
+     * @param unit The unit of timeToLive.
+     */
+    public TableMetadataCache(final int maxTables, long timeToLive, TimeUnit unit) {
+        if (maxTables < 1) {
+            throw new IllegalArgumentException("Maximum tables must be positive");
+        }
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxTables;
+            }
+        };
+    }
+
+    /**
+     * Get the cache shared by all DoUpload objects that have not been given
+     * another one.
+     *
+     * @return The shared cache.
+     */
+    public static TableMetadataCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Get the mapping from the spreadsheet columns to a table, loading the
+     * table's metadata if it is not cached or has expired.
+     *
+     * @param dataSource The dataSource referencing the database.
+     * @param conn A connection from the dataSource.
+     * @param tableName Name of the table.
+     * @param spreadsheetColumnNames The spreadsheet column names by column
+     * index.
+     * @return The mapping.
+     * @throws SQLException If the metadata cannot be read.
+     */
+    public TableMapping getMapping(DataSource dataSource, Connection conn,
+            String tableName, List<String> spreadsheetColumnNames) throws SQLException {
+        return getMapping(dataSource, tableName, spreadsheetColumnNames,
+                () -> readColumns(conn, tableName));
+    }
+
+    TableMapping getMapping(DataSource dataSource, String tableName,
+            List<String> spreadsheetColumnNames, ColumnLoader loader) throws SQLException {
+        Key key = new Key(dataSource, tableName);
+        Entry entry;
+        synchronized (this) {
+            entry = liveEntry(key);
+            if (entry != null) {
+                TableMapping mapping = entry.mappings.get(spreadsheetColumnNames);
+                if (mapping != null) {
+                    return mapping;
+                }
+            }
+        }
+        if (entry == null) {
+            entry = new Entry(loader.load());
+        }
+        TableMapping mapping = TableMapping.build(spreadsheetColumnNames, entry.columns);
+        synchronized (this) {
+            Entry current = entries.get(key);
+            if (current == null) {
+                entries.put(key, entry);
+                current = entry;
+            }
+            if (current == entry) {
+                current.mappings.put(mapping.getSpreadsheetColumnNames(), mapping);
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * Get the column metadata of a table, loading it if it is not cached or
+     * has expired. A connection is taken from the dataSource only when the
+     * metadata must be loaded.
+     *
+     * @param dataSource The dataSource referencing the database.
+     * @param tableName Name of the table.
+     * @return The unmodifiable list of column metadata.
+     * @throws SQLException If the metadata cannot be read.
+     */
+    public List<ColumnMetaData> getColumns(DataSource dataSource, String tableName)
+            throws SQLException {
+        return getColumns(dataSource, tableName, () -> {
+            try (Connection conn = dataSource.getConnection()) {
+                return readColumns(conn, tableName);
+            }
+        });
+    }
+
+    List<ColumnMetaData> getColumns(DataSource dataSource, String tableName,
+            ColumnLoader loader) throws SQLException {
+        Key key = new Key(dataSource, tableName);
+        synchronized (this) {
+            Entry entry = liveEntry(key);
+            if (entry != null) {
+                return entry.columns;
+            }
+        }
+        Entry entry = new Entry(loader.load());
+        synchronized (this) {
+            Entry current = liveEntry(key);
+            if (current == null) {
+                entries.put(key, entry);
+                current = entry;
+            }
+            return current.columns;
+        }
+    }
+
+    /**
+     * Get the entry for a table, removing it if it has expired. The caller
+     * must hold the lock.
+     */
+    private Entry liveEntry(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.loadedAt > timeToLiveNanos) {
+            entries.remove(key);
+            entry = null;
+        }
+        return entry;
+    }
+
+    /**
+     * Read the column metadata of a table.
+     *
+     * @param conn The database connection.
+     * @param tableName Name of the table.
+     * @return The unmodifiable list of column metadata.
+     * @throws SQLException If the metadata cannot be read.
+     */
+    public static List<ColumnMetaData> readColumns(Connection conn, String tableName)
+            throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getColumns(null, null, tableName, null)) {
+            return Collections.unmodifiableList(
+                    new ArrayList<>(ColumnMetaData.getColumnMetaDataList(rs)));
+        }
+    }
+
+    /**
+     * Remove a table from the cache. This must be called when the schema of
+     * the table is changed.
+     *
+     * @param dataSource The dataSource referencing the database.
+     * @param tableName Name of the table.
+     */
+    public synchronized void invalidate(DataSource dataSource, String tableName) {
+        entries.remove(new Key(dataSource, tableName));
+    }
+
+    /**
+     * Remove a table from the cache for every DataSource.
+     *
+     * @param tableName Name of the table.
+     */
+    public synchronized void invalidate(String tableName) {
+        entries.keySet().removeIf(key -> key.tableName.equals(tableName));
+    }
+
+    /**
+     * Remove all tables from the cache.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * Get the number of tables in the cache.
+     *
+     * @return The number of tables.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Loads the column metadata of a table.
+     */
+    @FunctionalInterface
+    interface ColumnLoader {
+
+        List<ColumnMetaData> load() throws SQLException;
+    }
+
+    private static class Key {
+
+        private final DataSource dataSource;
+        private final String tableName;
+
+        Key(DataSource dataSource, String tableName) {
+            this.dataSource = dataSource;
+            this.tableName = tableName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return dataSource == other.dataSource && tableName.equals(other.tableName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(dataSource), tableName);
+        }
+    }
+
+    private static class Entry {
+
+        private final long loadedAt = System.nanoTime();
+        private final List<ColumnMetaData> columns;
+        private final Map<List<String>, TableMapping> mappings
+                = new LinkedHashMap<List<String>, TableMapping>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<List<String>, TableMapping> eldest) {
+                return size() > MAX_MAPPINGS_PER_TABLE;
+            }
+        };
+
+        Entry(List<ColumnMetaData> columns) {
+            this.columns = columns;
+        }
+    }
+
+}
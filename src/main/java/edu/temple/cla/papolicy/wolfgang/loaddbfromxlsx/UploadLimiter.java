@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of uploads that run at once. Uploads submitted while the
+ * limit is reached wait in a queue without occupying a thread, and are
+ * passed to their executor in order as running uploads complete. An upload
+ * whose future is cancelled while it waits is never started.
+ *
+ * @author Paul Wolfgang
+ */
+public class UploadLimiter {
+
+    /**
+     * The default maximum number of uploads running at once.
+     */
+    public static final int DEFAULT_MAX_UPLOADS = 4;
+
+    private static final UploadLimiter SHARED = new UploadLimiter(DEFAULT_MAX_UPLOADS);
+
+    private final int maxUploads;
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private int running;
+
+    /**
+     * Constructor.
+     *
+     * @param maxUploads The maximum number of uploads running at once.
+     */
+    public UploadLimiter(int maxUploads) {
+        if (maxUploads < 1) {
+            throw new IllegalArgumentException("Maximum uploads must be positive");
+        }
+        this.maxUploads = maxUploads;
+    }
+
+    /**
+     * Get the limiter shared by all DoUpload objects that have not been given
+     * another one.
+     *
+     * @return The shared limiter.
+     */
+    public static UploadLimiter getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Run a task on an executor once fewer than the maximum number of tasks
+     * are running.
+     *
+     * @param <T> The type of the result.
+     * @param task The task.
+     * @param executor The executor that runs the task.
+     * @return The future result of the task.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable start = () -> {
+            try {
+                executor.execute(() -> {
+                    try {
+                        if (!future.isDone()) {
+                            future.complete(task.get());
+                        }
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    } finally {
+                        release();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                future.completeExceptionally(ex);
+                release();
+            }
+        };
+        synchronized (this) {
+            if (running >= maxUploads) {
+                waiting.add(start);
+                return future;
+            }
+            running++;
+        }
+        start.run();
+        return future;
+    }
+
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                running--;
+                return;
+            }
+        }
+        next.run();
+    }
+
+    /**
+     * Get the number of tasks running.
+     *
+     * @return The number of tasks running.
+     */
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * Get the number of tasks waiting to run.
+     *
+     * @return The number of tasks waiting.
+     */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+}
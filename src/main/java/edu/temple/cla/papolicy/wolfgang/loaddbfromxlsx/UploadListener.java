@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+/**
+ * Receives progress reports while DoUpload.run is loading a table. The
+ * methods may be called from the thread that reads the sheet or, when rows
+ * are written by an UploadPipeline, from the writer threads, so
+ * implementations must be thread safe. All methods do nothing by default.
+ *
+ * @author Paul Wolfgang
+ */
+public interface UploadListener {
+
+    /**
+     * Called each time another UploadMetrics.PROGRESS_INTERVAL rows have
+     * been read from the sheet.
+     *
+     * @param progress The metrics so far.
+     */
+    default void progress(UploadSummary progress) {
+    }
+
+    /**
+     * Called after each batch of rows has been sent to the database.
+     *
+     * @param rows The number of rows in the batch.
+     * @param latencyNanos The time the database took to execute the batch,
+     * in nanoseconds.
+     */
+    default void batchSent(int rows, long latencyNanos) {
+    }
+
+    /**
+     * Called once when the upload has finished or failed.
+     *
+     * @param summary The final metrics.
+     */
+    default void finished(UploadSummary summary) {
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the metrics of one upload and passes them to the UploadListener.
+ * The readers count the bytes parsed, DoUpload and the UploadPipeline count
+ * the rows read and skipped, and the RowWriters report each batch. The
+ * counters may be updated from several threads.
+ *
+ * @author Paul Wolfgang
+ */
+public class UploadMetrics {
+
+    /**
+     * The number of rows read between calls to UploadListener.progress.
+     */
+    public static final int PROGRESS_INTERVAL = 1000;
+
+    private static final UploadListener NO_LISTENER = new UploadListener() {
+    };
+
+    private final UploadListener listener;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final LongAdder rowsSkipped = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder rowsRejected = new LongAdder();
+    private final LongAdder bytesParsed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchNanos = new LongAdder();
+    private final LongAccumulator maxBatchNanos = new LongAccumulator(Math::max, 0);
+    private volatile boolean duplicate;
+
+    /**
+     * Constructor for metrics that are collected but not reported.
+     */
+    public UploadMetrics() {
+        this(null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param listener The listener to report to, or null.
+     */
+    public UploadMetrics(UploadListener listener) {
+        this.listener = listener != null ? listener : NO_LISTENER;
+    }
+
+    /**
+     * Count a data row read from the sheet.
+     */
+    public void rowRead() {
+        if (rowsRead.incrementAndGet() % PROGRESS_INTERVAL == 0) {
+            listener.progress(snapshot());
+        }
+    }
+
+    /**
+     * Count a row that was not written.
+     */
+    public void rowSkipped() {
+        rowsSkipped.increment();
+    }
+
+    /**
+     * Count bytes of the workbook read.
+     *
+     * @param count The number of bytes.
+     */
+    public void bytesParsed(long count) {
+        bytesParsed.add(count);
+    }
+
+    /**
+     * Record a batch sent to the database.
+     *
+     * @param rows The number of rows in the batch.
+     * @param latencyNanos The time taken to execute the batch.
+     */
+    public void batchSent(int rows, long latencyNanos) {
+        rowsWritten.add(rows);
+        batches.increment();
+        batchNanos.add(latencyNanos);
+        maxBatchNanos.accumulate(latencyNanos);
+        listener.batchSent(rows, latencyNanos);
+    }
+
+    /**
+     * Count rows that were sent to the database but not stored, such as rows
+     * that LOAD DATA skipped because they duplicate a unique key.
+     *
+     * @param rows The number of rows.
+     */
+    public void rowsRejected(long rows) {
+        rowsRejected.add(rows);
+    }
+
+    /**
+     * Record that the upload was skipped because the content had already
+     * been uploaded.
+     */
+    public void duplicateSkipped() {
+        duplicate = true;
+    }
+
+    /**
+     * Get the current values.
+     *
+     * @return The metrics so far.
+     */
+    public UploadSummary snapshot() {
+        return snapshot(null);
+    }
+
+    private UploadSummary snapshot(Exception error) {
+        return new UploadSummary(rowsRead.get(), rowsSkipped.sum(),
+                rowsWritten.sum(), rowsRejected.sum(), bytesParsed.sum(),
+                batches.sum(), batchNanos.sum(), maxBatchNanos.get(),
+                System.nanoTime() - startNanos, duplicate, error);
+    }
+
+    /**
+     * Report the final values to the listener.
+     *
+     * @param error The exception that stopped the upload, or null.
+     * @return The final metrics.
+     */
+    public UploadSummary finish(Exception error) {
+        UploadSummary summary = snapshot(error);
+        listener.finished(summary);
+        return summary;
+    }
+
+}
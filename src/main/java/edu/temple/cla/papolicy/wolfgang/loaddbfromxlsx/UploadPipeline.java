@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.sql.DataSource;
+import org.apache.log4j.Logger;
+
+/**
+ * Runs the conversion and writing of rows on separate threads so that
+ * reading the sheet, converting the rows, and waiting for the database can
+ * overlap. The thread that reads the sheet passes each row to submit. Rows
+ * go through a bounded queue to a pool of conversion workers and then
+ * through a second bounded queue to the writer threads, each of which has
+ * its own connection and RowWriter. When a queue is full the stage feeding it
+ * waits, so memory use is bounded by the queue capacity.
+ *
+ * <p>After an error no further rows are converted or written and reading
+ * stops at the next call to submit. All errors are logged in row order and
+ * the one for the earliest row is the cause of the exception thrown from
+ * finish.</p>
+ *
+ * @author Paul Wolfgang
+ */
+public class UploadPipeline implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(UploadPipeline.class);
+    private static final SheetRow END_OF_SHEET
+            = new SheetRow(-1, Collections.emptyList());
+    private static final ConvertedRow END_OF_ROWS
+            = new ConvertedRow(-1, 0);
+
+    private final DoUpload doUpload;
+    private final DataSource dataSource;
+    private final String tableName;
+    private final List<ColumnMetaData> columns;
+    private final int converterThreads;
+    private final int writerThreads;
+    private final UploadMetrics metrics;
+    private final BlockingQueue<SheetRow> sheetRows;
+    private final BlockingQueue<ConvertedRow> convertedRows;
+    private final ExecutorService converterPool;
+    private final ExecutorService writerPool;
+    private final List<Future<?>> converters = new ArrayList<>();
+    private final List<Future<?>> writers = new ArrayList<>();
+    private final Map<Integer, Exception> errors = new ConcurrentSkipListMap<>();
+    private volatile boolean failed;
+    private boolean finished;
+
+    /**
+     * Constructor. Starts the conversion and writer threads.
+     *
+     * @param doUpload The DoUpload that converts rows and creates writers.
+     * @param dataSource The source of the writer connections.
+     * @param tableName Name of the destination table.
+     * @param columns The metadata of the columns being loaded.
+     * @param converterThreads The number of conversion workers.
+     * @param writerThreads The number of writer threads.
+     * @param queueCapacity The capacity of each queue, in rows.
+     * @param metrics The metrics of the upload.
+     */
+    public UploadPipeline(DoUpload doUpload, DataSource dataSource,
+            String tableName, List<ColumnMetaData> columns,
+            int converterThreads, int writerThreads, int queueCapacity,
+            UploadMetrics metrics) {
+        this.doUpload = doUpload;
+        this.dataSource = dataSource;
+        this.tableName = tableName;
+        this.columns = columns;
+        this.converterThreads = converterThreads;
+        this.writerThreads = writerThreads;
+        this.metrics = metrics;
+        sheetRows = new ArrayBlockingQueue<>(queueCapacity);
+        convertedRows = new ArrayBlockingQueue<>(queueCapacity);
+        converterPool = Executors.newFixedThreadPool(converterThreads);
+        writerPool = Executors.newFixedThreadPool(writerThreads);
+        for (int i = 0; i < converterThreads; i++) {
+            converters.add(converterPool.submit(() -> {
+                convert();
+                return null;
+            }));
+        }
+        for (int i = 0; i < writerThreads; i++) {
+            writers.add(writerPool.submit(() -> {
+                write();
+                return null;
+            }));
+        }
+    }
+
+    /**
+     * Pass a row to the conversion workers, waiting if the queue is full.
+     *
+     * @param row The spreadsheet row.
+     * @throws Exception If an earlier row could not be converted or written.
+     */
+    public void submit(SheetRow row) throws Exception {
+        if (failed) {
+            finish();
+        }
+        sheetRows.put(row);
+    }
+
+    /**
+     * Wait for all submitted rows to be converted and written and stop the
+     * threads.
+     *
+     * @throws Exception The error for the earliest row that failed.
+     */
+    public void finish() throws Exception {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            for (int i = 0; i < converterThreads; i++) {
+                sheetRows.put(END_OF_SHEET);
+            }
+            await(converters);
+            for (int i = 0; i < writerThreads; i++) {
+                convertedRows.put(END_OF_ROWS);
+            }
+            await(writers);
+        } finally {
+            converterPool.shutdownNow();
+            writerPool.shutdownNow();
+        }
+        reportErrors();
+    }
+
+    /**
+     * Stop the threads. If finish has not been called, the rows that have not
+     * yet been written are discarded.
+     *
+     * @throws Exception The error for the earliest row that failed.
+     */
+    @Override
+    public void close() throws Exception {
+        if (!finished) {
+            failed = true;
+            finish();
+        }
+    }
+
+    private void convert() throws InterruptedException {
+        SheetRow row;
+        while ((row = sheetRows.take()) != END_OF_SHEET) {
+            if (failed) {
+                continue;
+            }
+            try {
+                Optional<ConvertedRow> convertedRow = doUpload.convertRow(row, columns);
+                if (convertedRow.isPresent()) {
+                    convertedRows.put(convertedRow.get());
+                } else {
+                    metrics.rowSkipped();
+                }
+            } catch (RuntimeException ex) {
+                fail(row.getRowNum(), ex);
+            }
+        }
+    }
+
+    private void write() throws InterruptedException {
+        boolean ended = false;
+        int rowNum = -1;
+        try (Connection conn = dataSource.getConnection();
+                RowWriter writer = doUpload.createWriter(conn, tableName, columns, metrics)) {
+            ConvertedRow row;
+            while ((row = convertedRows.take()) != END_OF_ROWS) {
+                if (!failed) {
+                    rowNum = row.getRowNum();
+                    writer.write(row);
+                }
+            }
+            ended = true;
+            if (!failed) {
+                writer.flush();
+            }
+        } catch (SQLException | RuntimeException ex) {
+            fail(rowNum, ex);
+        }
+        while (!ended && convertedRows.take() != END_OF_ROWS) {
+            // discard the remaining rows
+        }
+    }
+
+    private void fail(int rowNum, Exception ex) {
+        errors.putIfAbsent(rowNum, ex);
+        failed = true;
+    }
+
+    private void await(List<Future<?>> futures) throws InterruptedException {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                fail(-1, cause instanceof Exception
+                        ? (Exception) cause : new Exception(cause));
+            }
+        }
+    }
+
+    private void reportErrors() throws Exception {
+        if (errors.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Integer, Exception> entry : errors.entrySet()) {
+            LOGGER.error(errorMessage(entry.getKey()), entry.getValue());
+        }
+        Map.Entry<Integer, Exception> first = errors.entrySet().iterator().next();
+        throw new Exception(errorMessage(first.getKey()) + " (" + errors.size()
+                + " errors)", first.getValue());
+    }
+
+    private static String errorMessage(int rowNum) {
+        return rowNum < 0 ? "Error in pipeline" : "Error at row " + (rowNum + 1);
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * A file that records, for each table, the hash of the last content uploaded
+ * into it and the fingerprint of the table's column metadata at that time.
+ * Before an upload DoUpload reads the table's columns and consults the
+ * registry, so uploading the same content into a table whose columns have
+ * not changed is skipped. Tables are identified by their name and the
+ * database returned by database(Connection), so one registry may be used for
+ * several databases. Changes made to the table's rows by other programs are
+ * not detected; the entry for such a table should be removed. A registry
+ * should not be shared by processes that upload at the same time. It is
+ * stored as a properties file, which is replaced atomically each time it
+ * changes.
+ *
+ * @author Paul Wolfgang
+ */
+public class UploadRegistry {
+
+    private final Path file;
+    private final Properties entries = new Properties();
+
+    /**
+     * Constructor. The registry is read from the file if it exists.
+     *
+     * @param file The file that holds the registry.
+     * @throws IOException If the file exists but cannot be read.
+     */
+    public UploadRegistry(Path file) throws IOException {
+        this.file = file.toAbsolutePath();
+        if (Files.exists(this.file)) {
+            try (InputStream in = Files.newInputStream(this.file)) {
+                entries.load(in);
+            }
+        }
+    }
+
+    /**
+     * Identify the database of a connection by its URL, without the
+     * properties that follow a '?' or ';' since they may include a password,
+     * and its catalog.
+     *
+     * @param conn The database connection.
+     * @return The name of the database in the registry.
+     * @throws SQLException If the URL or catalog cannot be read.
+     */
+    public static String database(Connection conn) throws SQLException {
+        String url = conn.getMetaData().getURL();
+        if (url == null) {
+            url = "";
+        }
+        int end = url.length();
+        for (char c : new char[]{'?', ';'}) {
+            int index = url.indexOf(c);
+            if (index >= 0 && index < end) {
+                end = index;
+            }
+        }
+        String catalog = conn.getCatalog();
+        return url.substring(0, end) + (catalog == null ? "" : "#" + catalog);
+    }
+
+    /**
+     * Determine whether content has already been uploaded into a table.
+     *
+     * @param database The database, as returned by database(Connection).
+     * @param tableName Name of the table.
+     * @param contentHash The hash of the content.
+     * @param fingerprint The fingerprint of the table's column metadata.
+     * @return true if the last upload into the table had the same content and
+     * the table had the same columns.
+     */
+    public synchronized boolean isLoaded(String database, String tableName,
+            String contentHash, String fingerprint) {
+        return entry(contentHash, fingerprint).equals(
+                entries.getProperty(key(database, tableName)));
+    }
+
+    /**
+     * Record that content has been uploaded into a table.
+     *
+     * @param database The database, as returned by database(Connection).
+     * @param tableName Name of the table.
+     * @param contentHash The hash of the content.
+     * @param fingerprint The fingerprint of the table's column metadata.
+     * @throws IOException If the registry cannot be saved.
+     */
+    public synchronized void record(String database, String tableName,
+            String contentHash, String fingerprint) throws IOException {
+        entries.setProperty(key(database, tableName), entry(contentHash, fingerprint));
+        save();
+    }
+
+    /**
+     * Remove the entry for a table, so that the next upload into it is not
+     * skipped. This is done before an upload starts, since an upload that
+     * fails may leave the table changed.
+     *
+     * @param database The database, as returned by database(Connection).
+     * @param tableName Name of the table.
+     * @throws IOException If the registry cannot be saved.
+     */
+    public synchronized void remove(String database, String tableName)
+            throws IOException {
+        if (entries.remove(key(database, tableName)) != null) {
+            save();
+        }
+    }
+
+    /**
+     * Remove the entries for a table in every database.
+     *
+     * @param tableName Name of the table.
+     * @throws IOException If the registry cannot be saved.
+     */
+    public synchronized void remove(String tableName) throws IOException {
+        String prefix = tableName + "@";
+        if (entries.keySet().removeIf(key -> ((String) key).startsWith(prefix))) {
+            save();
+        }
+    }
+
+    private static String key(String database, String tableName) {
+        return tableName + "@" + database;
+    }
+
+    private static String entry(String contentHash, String fingerprint) {
+        return contentHash + " " + fingerprint;
+    }
+
+    private void save() throws IOException {
+        Path tempFile = Files.createTempFile(file.getParent(), "registry", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                entries.store(out,
+                        "Uploads by table@database: content hash, column fingerprint");
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+}
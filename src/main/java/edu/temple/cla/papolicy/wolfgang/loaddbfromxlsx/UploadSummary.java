@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+/**
+ * The metrics of an upload at a point in time. The object returned from
+ * DoUpload.run contains the final values and, if the upload failed, the
+ * exception that stopped it.
+ *
+ * @author Paul Wolfgang
+ */
+public class UploadSummary {
+
+    private final long rowsRead;
+    private final long rowsSkipped;
+    private final long rowsWritten;
+    private final long rowsRejected;
+    private final long bytesParsed;
+    private final long batches;
+    private final long batchNanos;
+    private final long maxBatchNanos;
+    private final long elapsedNanos;
+    private final boolean duplicate;
+    private final Exception error;
+
+    /**
+     * Constructor.
+     *
+     * @param rowsRead The number of data rows read from the sheet.
+     * @param rowsSkipped The number of rows skipped because they were empty or
+     * contained a value for a column of an unsupported type.
+     * @param rowsWritten The number of rows sent to the database.
+     * @param bytesParsed The number of bytes of the workbook read.
+     * @param batches The number of batches sent to the database.
+     * @param batchNanos The total time spent executing batches.
+     * @param maxBatchNanos The longest time spent executing a batch.
+     * @param elapsedNanos The time since the upload started.
+     * @param error The exception that stopped the upload, or null.
+     */
+    public UploadSummary(long rowsRead, long rowsSkipped, long rowsWritten,
+            long bytesParsed, long batches, long batchNanos, long maxBatchNanos,
+            long elapsedNanos, Exception error) {
+        this(rowsRead, rowsSkipped, rowsWritten, 0, bytesParsed, batches,
+                batchNanos, maxBatchNanos, elapsedNanos, false, error);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param rowsRead The number of data rows read from the sheet.
+     * @param rowsSkipped The number of rows skipped because they were empty or
+     * contained a value for a column of an unsupported type.
+     * @param rowsWritten The number of rows sent to the database.
+     * @param bytesParsed The number of bytes of the workbook read.
+     * @param batches The number of batches sent to the database.
+     * @param batchNanos The total time spent executing batches.
+     * @param maxBatchNanos The longest time spent executing a batch.
+     * @param elapsedNanos The time since the upload started.
+     * @param duplicate true if the upload was skipped because the content had
+     * already been uploaded.
+     * @param error The exception that stopped the upload, or null.
+     */
+    public UploadSummary(long rowsRead, long rowsSkipped, long rowsWritten,
+            long bytesParsed, long batches, long batchNanos, long maxBatchNanos,
+            long elapsedNanos, boolean duplicate, Exception error) {
+        this(rowsRead, rowsSkipped, rowsWritten, 0, bytesParsed, batches,
+                batchNanos, maxBatchNanos, elapsedNanos, duplicate, error);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param rowsRead The number of data rows read from the sheet.
+     * @param rowsSkipped The number of rows skipped because they were empty or
+     * contained a value for a column of an unsupported type.
+     * @param rowsWritten The number of rows sent to the database.
+     * @param rowsRejected The number of the rows sent that the database did
+     * not store.
+     * @param bytesParsed The number of bytes of the workbook read.
+     * @param batches The number of batches sent to the database.
+     * @param batchNanos The total time spent executing batches.
+     * @param maxBatchNanos The longest time spent executing a batch.
+     * @param elapsedNanos The time since the upload started.
+     * @param duplicate true if the upload was skipped because the content had
+     * already been uploaded.
+     * @param error The exception that stopped the upload, or null.
+     */
+    public UploadSummary(long rowsRead, long rowsSkipped, long rowsWritten,
+            long rowsRejected, long bytesParsed, long batches, long batchNanos,
+            long maxBatchNanos, long elapsedNanos, boolean duplicate, Exception error) {
+        this.rowsRead = rowsRead;
+        this.rowsSkipped = rowsSkipped;
+        this.rowsWritten = rowsWritten;
+        this.rowsRejected = rowsRejected;
+        this.bytesParsed = bytesParsed;
+        this.batches = batches;
+        this.batchNanos = batchNanos;
+        this.maxBatchNanos = maxBatchNanos;
+        this.elapsedNanos = elapsedNanos;
+        this.duplicate = duplicate;
+        this.error = error;
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getRowsSkipped() {
+        return rowsSkipped;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    public long getBytesParsed() {
+        return bytesParsed;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public long getBatchNanos() {
+        return batchNanos;
+    }
+
+    public long getMaxBatchNanos() {
+        return maxBatchNanos;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public boolean isDuplicate() {
+        return duplicate;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    /**
+     * Get the number of rows written per second of elapsed time.
+     *
+     * @return The throughput.
+     */
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : rowsWritten * 1.0e9 / elapsedNanos;
+    }
+
+    /**
+     * Get the average time the database took to execute a batch.
+     *
+     * @return The average latency in milliseconds.
+     */
+    public double getAverageBatchMillis() {
+        return batches == 0 ? 0.0 : batchNanos / 1.0e6 / batches;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows read, %d skipped, %d written%s in %d batches"
+                + " (avg %.1f ms, max %.1f ms), %d bytes parsed, %.3f s, %.0f rows/s%s",
+                rowsRead, rowsSkipped, rowsWritten,
+                rowsRejected == 0 ? "" : " (" + rowsRejected + " rejected)",
+                batches, getAverageBatchMillis(),
+                maxBatchNanos / 1.0e6, bytesParsed, elapsedNanos / 1.0e9,
+                getRowsPerSecond(), duplicate ? ", skipped as already uploaded"
+                : error == null ? "" : ", failed: " + error);
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.InputStream;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * SheetReader that loads the whole workbook into an XSSFWorkbook. This is
+ * simple but the memory required is proportional to the size of the
+ * workbook.
+ *
+ * @author Paul Wolfgang
+ */
+public class WorkbookSheetReader implements SheetReader {
+
+    private final UploadMetrics metrics;
+
+    /**
+     * Constructor.
+     */
+    public WorkbookSheetReader() {
+        this(new UploadMetrics());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param metrics The metrics that count the bytes of the workbook read.
+     */
+    public WorkbookSheetReader(UploadMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void read(InputStream input, String sheetName, RowHandler handler)
+            throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook(new CountingInputStream(input, metrics))) {
+            XSSFSheet sheet = wb.getSheet(sheetName);
+            if (sheet == null) {
+                throw new Exception("Sheet " + sheetName + " does not exist");
+            }
+            for (Row row : sheet) {
+                if (handler.wantsRow(row.getRowNum())) {
+                    handler.handleRow(SheetRow.of(row, handler::wantsColumn));
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import javax.sql.DataSource;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Paul Wolfgang
+ */
+public class BatchLoaderTest {
+
+    @Test
+    public void testReadManifest() throws Exception {
+        Path manifest = Files.createTempFile("manifest", ".txt");
+        try {
+            Files.write(manifest, Arrays.asList("# nightly load", "",
+                    "a.xlsx\tSheet 1, 2\tTableA", "data/b.csv,,TableB"),
+                    StandardCharsets.UTF_8);
+            List<BatchLoader.Job> jobs = BatchLoader.readManifest(manifest);
+            assertEquals(2, jobs.size());
+            assertEquals(manifest.getParent().resolve("a.xlsx"),
+                    jobs.get(0).getWorkbook());
+            assertEquals("Sheet 1, 2", jobs.get(0).getSheet());
+            assertEquals("TableA", jobs.get(0).getTable());
+            assertEquals(manifest.getParent().resolve("data/b.csv"),
+                    jobs.get(1).getWorkbook());
+            assertEquals("", jobs.get(1).getSheet());
+        } finally {
+            Files.delete(manifest);
+        }
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void testMalformedManifest() throws Exception {
+        Path manifest = Files.createTempFile("manifest", ".txt");
+        try {
+            Files.write(manifest, Arrays.asList("a.xlsx,Sheet1"),
+                    StandardCharsets.UTF_8);
+            BatchLoader.readManifest(manifest);
+        } finally {
+            Files.delete(manifest);
+        }
+    }
+
+    @Test
+    public void testFailedJobsAreReported() {
+        DataSource dataSource = (DataSource) Proxy.newProxyInstance(
+                DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException();
+                });
+        File missing = new File("missing.xlsx");
+        List<BatchLoader.Job> jobs = Arrays.asList(
+                new BatchLoader.Job(missing.toPath(), "Sheet1", "A"),
+                new BatchLoader.Job(missing.toPath(), "Sheet2", "B"));
+        List<BatchLoader.JobResult> results
+                = new BatchLoader(dataSource, 2, doUpload -> {
+                }).run(jobs);
+        assertEquals(2, results.size());
+        assertSame(jobs.get(1), results.get(1).getJob());
+        assertFalse(results.get(0).isSuccessful());
+        String report = BatchLoader.report(results, 1000000000L);
+        assertTrue(report.contains("FAILED"));
+        assertTrue(report.contains("missing.xlsx[Sheet2] -> B"));
+        assertTrue(report.contains("2 jobs, 2 failed, 0 rows in 1.00 seconds"));
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Paul Wolfgang
+ */
+public class BatchSizerTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void testFits() {
+        BatchSizer sizer = new BatchSizer("Test", MB, MB / 4, 4 * MB);
+        assertTrue(sizer.fits(0, 2 * MB));
+        assertTrue(sizer.fits(MB / 2, MB / 2));
+        assertFalse(sizer.fits(MB / 2, MB / 2 + 1));
+        assertFalse(sizer.isFull(MB - 1));
+        assertTrue(sizer.isFull(MB));
+    }
+
+    @Test
+    public void testInitialSizeIsLimited() {
+        assertEquals(4 * MB, new BatchSizer("Test", 16 * MB, MB, 4 * MB).getTargetBytes());
+        assertEquals(MB, new BatchSizer("Test", 1, MB, 4 * MB).getTargetBytes());
+    }
+
+    @Test
+    public void testGrowsToLimitWhileThroughputHolds() {
+        BatchSizer sizer = new BatchSizer("Test", MB, MB / 4, 4 * MB);
+        for (int i = 0; i < 30; i++) {
+            long bytes = sizer.getTargetBytes();
+            sizer.batchSent(bytes, bytes * 10);
+        }
+        assertTrue(sizer.getTargetBytes() > 2 * MB);
+        assertTrue(sizer.getTargetBytes() <= 4 * MB);
+    }
+
+    @Test
+    public void testShrinksWhenThroughputDrops() {
+        BatchSizer sizer = new BatchSizer("Test", MB, MB / 4, 4 * MB);
+        for (int i = 0; i < 3; i++) {
+            sizer.batchSent(MB, MB);
+        }
+        long grown = sizer.getTargetBytes();
+        assertTrue(grown > MB);
+        for (int i = 0; i < 3; i++) {
+            sizer.batchSent(grown, grown * 10);
+        }
+        assertTrue(sizer.getTargetBytes() < grown);
+    }
+
+    @Test
+    public void testSmallBatchesAreIgnored() {
+        BatchSizer sizer = new BatchSizer("Test", MB, MB / 4, 4 * MB);
+        for (int i = 0; i < 10; i++) {
+            sizer.batchSent(1000, 1000);
+        }
+        assertEquals(MB, sizer.getTargetBytes());
+    }
+
+    @Test
+    public void testUtf8Length() {
+        assertEquals(3, BatchSizer.utf8Length("abc"));
+        assertEquals(2, BatchSizer.utf8Length("\u00e9"));
+        assertEquals(3, BatchSizer.utf8Length("\u20ac"));
+        assertEquals(4, BatchSizer.utf8Length("\ud83d\ude00"));
+    }
+
+}
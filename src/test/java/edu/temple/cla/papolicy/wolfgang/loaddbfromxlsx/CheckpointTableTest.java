@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.h2.jdbcx.JdbcDataSource;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of resumable uploads, which commit each batch with a checkpoint in
+ * the CheckpointTable, against an in-memory H2 database. The load is made to
+ * fail part way through by a CHECK constraint that rejects row 25, which is
+ * then dropped before the upload is run again.
+ *
+ * @author Paul Wolfgang
+ */
+public class CheckpointTableTest {
+
+    private static final int ROWS = 50;
+    private static final int BAD_ROW = 25;
+    private static final int BATCH_SIZE = 10;
+
+    private JdbcDataSource dataSource;
+    private Connection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:checkpoint;MODE=MySQL");
+        conn = dataSource.getConnection();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE items (id INTEGER PRIMARY KEY,"
+                    + " amount INTEGER, CONSTRAINT limit_amount CHECK (amount < 1000))");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DROP TABLE items");
+            stmt.executeUpdate("DROP TABLE IF EXISTS " + CheckpointTable.TABLE_NAME);
+        }
+        conn.close();
+    }
+
+    private static byte[] workbook(int badAmount) throws IOException {
+        try (XSSFWorkbook wb = new XSSFWorkbook();
+                ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            XSSFSheet sheet = wb.createSheet("Data");
+            XSSFRow header = sheet.createRow(0);
+            header.createCell(0).setCellValue("id");
+            header.createCell(1).setCellValue("amount");
+            for (int i = 1; i <= ROWS; i++) {
+                XSSFRow row = sheet.createRow(i);
+                row.createCell(0).setCellValue(i);
+                row.createCell(1).setCellValue(i == BAD_ROW ? badAmount : i);
+            }
+            wb.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    private UploadSummary upload(byte[] content, String sheetName, InputFormat format) {
+        DoUpload doUpload = new DoUpload(dataSource);
+        doUpload.setMetadataCache(null);
+        doUpload.setInputFormat(format);
+        doUpload.setResumable(true);
+        doUpload.setBatchSize(BATCH_SIZE);
+        return doUpload.run(new ByteArrayInputStream(content), sheetName, "items");
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private void dropConstraint() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE items DROP CONSTRAINT limit_amount");
+        }
+    }
+
+    private void assertEveryRowOnce() throws SQLException {
+        assertEquals(ROWS, count("SELECT COUNT(*) FROM items"));
+        assertEquals(ROWS, count("SELECT COUNT(DISTINCT id) FROM items"));
+        assertEquals(1, count("SELECT MIN(id) FROM items"));
+        assertEquals(ROWS, count("SELECT MAX(id) FROM items"));
+        assertEquals(0, count("SELECT COUNT(*) FROM " + CheckpointTable.TABLE_NAME));
+    }
+
+    @Test
+    public void testFailedUploadIsResumed() throws Exception {
+        byte[] content = workbook(5000);
+        UploadSummary failed = upload(content, "Data", InputFormat.XLSX);
+        assertFalse(failed.isSuccessful());
+        assertEquals(20, count("SELECT COUNT(*) FROM items"));
+        assertEquals(20, count("SELECT last_row FROM " + CheckpointTable.TABLE_NAME));
+        dropConstraint();
+        UploadSummary resumed = upload(content, "Data", InputFormat.XLSX);
+        assertTrue(resumed.toString(), resumed.isSuccessful());
+        assertEquals(ROWS - 20, resumed.getRowsWritten());
+        assertEveryRowOnce();
+    }
+
+    @Test
+    public void testChangedWorkbookIsNotResumed() throws Exception {
+        assertFalse(upload(workbook(5000), "Data", InputFormat.XLSX).isSuccessful());
+        dropConstraint();
+        UploadSummary changed = upload(workbook(500), "Data", InputFormat.XLSX);
+        assertFalse(changed.isSuccessful());
+        assertTrue(changed.getError().getMessage(), changed.getError().getMessage()
+                .contains("has an incomplete load of sheet Data from a different workbook"));
+        assertEquals(0, changed.getRowsWritten());
+        assertEquals(20, count("SELECT COUNT(*) FROM items"));
+        // Starting over means removing both the checkpoint and its rows.
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM " + CheckpointTable.TABLE_NAME);
+            stmt.executeUpdate("DELETE FROM items");
+        }
+        UploadSummary restarted = upload(workbook(500), "Data", InputFormat.XLSX);
+        assertTrue(restarted.toString(), restarted.isSuccessful());
+        assertEquals(ROWS, restarted.getRowsWritten());
+        assertEveryRowOnce();
+    }
+
+    @Test
+    public void testFailedCsvUploadIsResumed() throws Exception {
+        StringBuilder csv = new StringBuilder("id,amount\n");
+        for (int i = 1; i <= ROWS; i++) {
+            csv.append(i).append(',').append(i == BAD_ROW ? 5000 : i).append('\n');
+        }
+        byte[] content = csv.toString().getBytes(StandardCharsets.UTF_8);
+        assertFalse(upload(content, null, InputFormat.CSV).isSuccessful());
+        assertEquals(20, count("SELECT COUNT(*) FROM items"));
+        dropConstraint();
+        UploadSummary resumed = upload(content, null, InputFormat.CSV);
+        assertTrue(resumed.toString(), resumed.isSuccessful());
+        assertEveryRowOnce();
+    }
+
+}
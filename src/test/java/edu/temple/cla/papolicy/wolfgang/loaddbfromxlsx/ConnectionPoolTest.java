@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Paul Wolfgang
+ */
+public class ConnectionPoolTest {
+
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+    private final AtomicInteger rolledBack = new AtomicInteger();
+
+    private final DataSource dataSource = (DataSource) Proxy.newProxyInstance(
+            DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+            (proxy, method, args) -> {
+                if (method.getName().equals("getConnection")) {
+                    opened.incrementAndGet();
+                    return newConnection();
+                }
+                throw new UnsupportedOperationException();
+            });
+
+    private Connection newConnection() {
+        AtomicBoolean autoCommit = new AtomicBoolean(true);
+        AtomicBoolean isClosed = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getAutoCommit":
+                            return autoCommit.get();
+                        case "setAutoCommit":
+                            autoCommit.set((Boolean) args[0]);
+                            return null;
+                        case "rollback":
+                            rolledBack.incrementAndGet();
+                            return null;
+                        case "isClosed":
+                            return isClosed.get();
+                        case "close":
+                            isClosed.set(true);
+                            closed.incrementAndGet();
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Test
+    public void testConnectionIsReused() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(dataSource, 2)) {
+            Connection first = pool.getConnection();
+            first.close();
+            assertTrue(first.isClosed());
+            assertEquals(1, pool.getIdleCount());
+            Connection second = pool.getConnection();
+            assertFalse(second.isClosed());
+            second.close();
+            assertEquals(1, opened.get());
+            assertEquals(0, closed.get());
+        }
+        assertEquals(1, closed.get());
+    }
+
+    @Test
+    public void testTransactionIsRolledBack() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(dataSource, 2)) {
+            Connection conn = pool.getConnection();
+            conn.setAutoCommit(false);
+            conn.close();
+            assertEquals(1, rolledBack.get());
+            assertTrue(pool.getConnection().getAutoCommit());
+        }
+    }
+
+    @Test
+    public void testExcessConnectionsAreClosed() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(dataSource, 1)) {
+            Connection first = pool.getConnection();
+            Connection second = pool.getConnection();
+            first.close();
+            second.close();
+            first.close();
+            assertEquals(2, opened.get());
+            assertEquals(1, closed.get());
+            assertEquals(1, pool.getIdleCount());
+        }
+    }
+
+    @Test(expected = java.sql.SQLException.class)
+    public void testClosedConnectionCannotBeUsed() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(dataSource, 1)) {
+            Connection conn = pool.getConnection();
+            conn.close();
+            conn.createStatement();
+        }
+    }
+
+}
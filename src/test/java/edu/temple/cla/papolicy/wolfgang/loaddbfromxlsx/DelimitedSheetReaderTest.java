@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Paul Wolfgang
+ */
+public class DelimitedSheetReaderTest {
+
+    private static final String CSV = "Name,Note,Count\r\n"
+            + "Alpha,\"one, two\",1\r\n"
+            + "\r\n"
+            + "Beta,\"line 1\nline 2\",2\r\n"
+            + "Gamma,\"say \"\"hi\"\"\",\r\n"
+            + "\"\",,3";
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("test", ".csv");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    private List<SheetRow> readAll(String text, char delimiter, int chunkSize)
+            throws Exception {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        DelimitedSheetReader reader = new DelimitedSheetReader(delimiter);
+        reader.setChunkSize(chunkSize);
+        List<SheetRow> rows = new ArrayList<>();
+        reader.read(file, null, rows::add);
+        return rows;
+    }
+
+    private static List<String> values(SheetRow row) {
+        List<String> values = new ArrayList<>();
+        for (SheetCell cell : row) {
+            values.add(cell.getCellTypeEnum() == CellType.BLANK ? null
+                    : cell.getStringCellValue());
+        }
+        return values;
+    }
+
+    @Test
+    public void testQuotedFields() throws Exception {
+        List<SheetRow> rows = readAll(CSV, ',', DelimitedSheetReader.DEFAULT_CHUNK_SIZE);
+        assertEquals(5, rows.size());
+        assertEquals("[Name, Note, Count]", values(rows.get(0)).toString());
+        assertEquals("[Alpha, one, two, 1]", values(rows.get(1)).toString());
+        assertEquals("[Beta, line 1\nline 2, 2]", values(rows.get(2)).toString());
+        assertEquals("[Gamma, say \"hi\", null]", values(rows.get(3)).toString());
+        assertEquals("[null, null, 3]", values(rows.get(4)).toString());
+    }
+
+    @Test
+    public void testRowIndexCountsEmptyLines() throws Exception {
+        List<SheetRow> rows = readAll(CSV, ',', DelimitedSheetReader.DEFAULT_CHUNK_SIZE);
+        int[] expected = {0, 1, 3, 4, 5};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], rows.get(i).getRowNum());
+            for (SheetCell cell : rows.get(i)) {
+                assertEquals(expected[i], cell.getRowIndex());
+            }
+        }
+    }
+
+    @Test
+    public void testSmallChunksGiveSameRows() throws Exception {
+        List<SheetRow> expected = readAll(CSV, ',', DelimitedSheetReader.DEFAULT_CHUNK_SIZE);
+        for (int chunkSize = 1; chunkSize < CSV.length(); chunkSize++) {
+            List<SheetRow> result = readAll(CSV, ',', chunkSize);
+            assertEquals(expected.size(), result.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getRowNum(), result.get(i).getRowNum());
+                assertEquals(values(expected.get(i)), values(result.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testTabDelimitedWithByteOrderMark() throws Exception {
+        List<SheetRow> rows = readAll("\ufeffName\tNote\nA,B\t\u00e9\n", '\t',
+                DelimitedSheetReader.DEFAULT_CHUNK_SIZE);
+        assertEquals(2, rows.size());
+        assertEquals("[Name, Note]", values(rows.get(0)).toString());
+        assertEquals("[A,B, \u00e9]", values(rows.get(1)).toString());
+    }
+
+    @Test
+    public void testTabDelimitedQuotesAreLiteral() throws Exception {
+        String tsv = "Name\tNote\n\"Alpha\t6\" pipe\n\"Beta\"\tsays \"hi\"\n";
+        List<SheetRow> rows = readAll(tsv, '\t', 8);
+        assertEquals(3, rows.size());
+        assertEquals("[\"Alpha, 6\" pipe]", values(rows.get(1)).toString());
+        assertEquals("[\"Beta\", says \"hi\"]", values(rows.get(2)).toString());
+    }
+
+    @Test
+    public void testTabDelimitedQuotingCanBeEnabled() throws Exception {
+        Files.write(file.toPath(),
+                "Name\tNote\n\"A\tB\"\tC\n".getBytes(StandardCharsets.UTF_8));
+        DelimitedSheetReader reader = new DelimitedSheetReader('\t');
+        reader.setQuoting(true);
+        List<SheetRow> rows = new ArrayList<>();
+        reader.read(file, null, rows::add);
+        assertEquals("[A\tB, C]", values(rows.get(1)).toString());
+    }
+
+    @Test
+    public void testUnwantedRowsAreSkipped() throws Exception {
+        Files.write(file.toPath(), CSV.getBytes(StandardCharsets.UTF_8));
+        List<SheetRow> rows = new ArrayList<>();
+        new DelimitedSheetReader(',').read(file, null, new RowHandler() {
+            @Override
+            public void handleRow(SheetRow row) {
+                rows.add(row);
+            }
+
+            @Override
+            public boolean wantsRow(int rowIndex) {
+                return rowIndex == 0 || rowIndex > 3;
+            }
+        });
+        assertEquals(3, rows.size());
+        assertEquals(4, rows.get(1).getRowNum());
+    }
+
+    @Test
+    public void testUnwantedColumnsAreSkipped() throws Exception {
+        Files.write(file.toPath(), CSV.getBytes(StandardCharsets.UTF_8));
+        List<SheetRow> rows = new ArrayList<>();
+        new DelimitedSheetReader(',').read(file, null, new RowHandler() {
+            @Override
+            public void handleRow(SheetRow row) {
+                rows.add(row);
+            }
+
+            @Override
+            public boolean wantsColumn(int columnIndex) {
+                return columnIndex != 1;
+            }
+        });
+        assertEquals(5, rows.size());
+        assertEquals("[Gamma, null]", values(rows.get(3)).toString());
+        for (SheetRow row : rows) {
+            for (SheetCell cell : row) {
+                assertNotEquals(1, cell.getColumnIndex());
+            }
+        }
+    }
+
+    @Test
+    public void testIntegersAreRoundedAsInWorkbook() throws Exception {
+        double[] numbers = {1.5, 2.5, -1.5, 2.4, 0.5, 7.0, 1.0e3};
+        StringBuilder csv = new StringBuilder("n\n");
+        ByteArrayOutputStream workbook = new ByteArrayOutputStream();
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            XSSFSheet sheet = wb.createSheet("Data");
+            sheet.createRow(0).createCell(0).setCellValue("n");
+            for (int i = 0; i < numbers.length; i++) {
+                csv.append(numbers[i]).append('\n');
+                sheet.createRow(i + 1).createCell(0).setCellValue(numbers[i]);
+            }
+            wb.write(workbook);
+        }
+        Files.write(file.toPath(), csv.toString().getBytes(StandardCharsets.UTF_8));
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:parity;MODE=MySQL");
+        try (Connection conn = dataSource.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE from_csv (n INTEGER)");
+            stmt.executeUpdate("CREATE TABLE from_xlsx (n INTEGER)");
+            DoUpload csvUpload = new DoUpload(dataSource);
+            csvUpload.setMetadataCache(null);
+            csvUpload.setInputFormat(InputFormat.CSV);
+            try (InputStream in = new FileInputStream(file)) {
+                assertTrue(csvUpload.run(in, null, "from_csv").isSuccessful());
+            }
+            DoUpload xlsxUpload = new DoUpload(dataSource);
+            xlsxUpload.setMetadataCache(null);
+            assertTrue(xlsxUpload.run(new ByteArrayInputStream(workbook.toByteArray()),
+                    "Data", "from_xlsx").isSuccessful());
+            assertEquals("[2, 3, -2, 2, 1, 7, 1000]", column(stmt, "from_csv"));
+            assertEquals(column(stmt, "from_xlsx"), column(stmt, "from_csv"));
+        }
+    }
+
+    @Test
+    public void testNonNumericIntegerIsRowError() throws Exception {
+        Files.write(file.toPath(), "n\n1\nabc\n".getBytes(StandardCharsets.UTF_8));
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:rowerror;MODE=MySQL");
+        try (Connection conn = dataSource.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE numbers (n INTEGER)");
+            DoUpload doUpload = new DoUpload(dataSource);
+            doUpload.setMetadataCache(null);
+            doUpload.setInputFormat(InputFormat.CSV);
+            UploadSummary summary;
+            try (InputStream in = new FileInputStream(file)) {
+                summary = doUpload.run(in, null, "numbers");
+            }
+            assertFalse(summary.isSuccessful());
+            assertEquals("Error processing row: 2, column: 0",
+                    summary.getError().getMessage());
+            assertTrue(summary.getError().getCause() instanceof NumberFormatException);
+        }
+    }
+
+    private static String column(Statement stmt, String table) throws Exception {
+        List<Long> values = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery("SELECT n FROM " + table)) {
+            while (rs.next()) {
+                values.add(rs.getLong(1));
+            }
+        }
+        return values.toString();
+    }
+
+}
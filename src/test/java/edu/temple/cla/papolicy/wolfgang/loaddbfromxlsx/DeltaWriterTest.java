@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringJoiner;
+import org.h2.jdbcx.JdbcDataSource;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of DeltaWriter against an in-memory H2 database in MySQL mode.
+ *
+ * @author Paul Wolfgang
+ */
+public class DeltaWriterTest {
+
+    private JdbcDataSource dataSource;
+    private Connection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:delta;MODE=MySQL");
+        conn = dataSource.getConnection();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE items (id INTEGER PRIMARY KEY,"
+                    + " name VARCHAR(20), amount INTEGER)");
+            stmt.executeUpdate("INSERT INTO items VALUES (1, 'one', 10),"
+                    + " (2, 'two', 20), (3, 'three', 30), (4, 'four', 40)");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DROP TABLE items");
+        }
+        conn.close();
+    }
+
+    private UploadSummary upload(String csv, boolean deleteMissing, String... keyColumns) {
+        DoUpload doUpload = new DoUpload(dataSource);
+        doUpload.setMetadataCache(null);
+        doUpload.setInputFormat(InputFormat.CSV);
+        doUpload.setLoadMode(LoadMode.DELTA);
+        doUpload.setDeleteMissing(deleteMissing);
+        if (keyColumns.length > 0) {
+            doUpload.setKeyColumns(Arrays.asList(keyColumns));
+        }
+        return doUpload.run(new ByteArrayInputStream(
+                csv.getBytes(StandardCharsets.UTF_8)), null, "items");
+    }
+
+    private String contents() throws SQLException {
+        StringJoiner rows = new StringJoiner(" ");
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(
+                        "SELECT id, name, amount FROM items ORDER BY id")) {
+            while (rs.next()) {
+                rows.add(rs.getInt(1) + ":" + rs.getString(2) + ":" + rs.getInt(3));
+            }
+        }
+        return rows.toString();
+    }
+
+    @Test
+    public void testInsertUpdateAndUnchanged() throws Exception {
+        UploadSummary summary = upload("id,name,amount\n"
+                + "1,one,10\n2,two,22\n3,three,30\n4,four,40\n5,five,50\n", false);
+        assertTrue(summary.toString(), summary.isSuccessful());
+        assertEquals(5, summary.getRowsRead());
+        assertEquals(2, summary.getRowsWritten());
+        assertEquals("1:one:10 2:two:22 3:three:30 4:four:40 5:five:50", contents());
+    }
+
+    @Test
+    public void testDeleteMissing() throws Exception {
+        UploadSummary summary = upload("id,name,amount\n"
+                + "1,one,10\n2,two,22\n5,five,50\n", true);
+        assertTrue(summary.toString(), summary.isSuccessful());
+        assertEquals(4, summary.getRowsWritten());
+        assertEquals("1:one:10 2:two:22 5:five:50", contents());
+    }
+
+    @Test
+    public void testMissingRowsAreKeptByDefault() throws Exception {
+        UploadSummary summary = upload("id,name,amount\n1,one,11\n", false);
+        assertTrue(summary.toString(), summary.isSuccessful());
+        assertEquals("1:one:11 2:two:20 3:three:30 4:four:40", contents());
+    }
+
+    @Test
+    public void testKeyColumnsThatAreNotUniqueAreRefused() throws Exception {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE items SET name = 'two' WHERE id = 3");
+        }
+        UploadSummary summary = upload("id,name,amount\n1,one,11\n", false, "name");
+        assertFalse(summary.isSuccessful());
+        assertTrue(summary.getError().getMessage().contains(
+                "Two rows of items have the same key hash"));
+        assertEquals("1:one:10 2:two:20 3:two:30 4:four:40", contents());
+    }
+
+    @Test
+    public void testUpdateThatMatchesNoRowFails() throws Exception {
+        List<ColumnMetaData> columns = TableMetadataCache.readColumns(conn, "items");
+        UploadMetrics metrics = new UploadMetrics();
+        try (DeltaWriter delta = new DeltaWriter(conn, dataSource, "items", columns,
+                null, new InsertStatementWriter(conn, "items", columns, metrics),
+                false, 10, metrics)) {
+            // Deleting the row after the table is read makes its key hash stand
+            // for a key that is not in the table, as a hash collision would.
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DELETE FROM items WHERE id = 2");
+            }
+            ConvertedRow row = new ConvertedRow(1, 3);
+            row.setLong(0, 2);
+            row.setObject(1, "two");
+            row.setLong(2, 22);
+            delta.write(row);
+            delta.finish();
+            fail("Expected SQLException");
+        } catch (SQLException sqlex) {
+            assertTrue(sqlex.getMessage(), sqlex.getMessage().startsWith(
+                    "Row 1 of a batch of 1 matched no row: UPDATE items"));
+        }
+    }
+
+}
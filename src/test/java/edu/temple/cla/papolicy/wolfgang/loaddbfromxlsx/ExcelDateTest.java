@@ -31,6 +31,7 @@
  */
 package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -112,4 +113,22 @@ public class ExcelDateTest {
         assertEquals(expResult, result);
     }
 
+    @Test
+    public void testExcelDateToEpochDay() {
+        long expResult = LocalDate.parse(expected).toEpochDay();
+        assertEquals(expResult, DoUpload.excelDateToEpochDay(input));
+        assertEquals(expResult, DoUpload.excelDateToEpochDay(input + 0.75));
+    }
+
+    @Test
+    public void testTextDateToEpochDay() {
+        LocalDate date = LocalDate.parse(expected);
+        assertEquals(date.toEpochDay(), DoUpload.textDateToEpochDay(expected));
+        assertEquals(date.toEpochDay(),
+                DoUpload.textDateToEpochDay(expected + " 10:15:00"));
+        String usDate = String.format("%d/%d/%d", date.getMonthValue(),
+                date.getDayOfMonth(), date.getYear());
+        assertEquals(date.toEpochDay(), DoUpload.textDateToEpochDay(usDate));
+    }
+
 }
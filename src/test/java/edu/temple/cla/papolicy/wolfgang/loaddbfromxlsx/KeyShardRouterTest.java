@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.function.ToIntFunction;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Paul Wolfgang
+ */
+public class KeyShardRouterTest {
+
+    private static ConvertedRow row(long key) {
+        ConvertedRow row = new ConvertedRow(1, 2);
+        row.setObject(0, "x");
+        row.setLong(1, key);
+        return row;
+    }
+
+    @Test
+    public void testRangeRoute() throws Exception {
+        ToIntFunction<ConvertedRow> router = KeyShardRouter.byRange("K", 100, 200)
+                .rangeRoute(1, Types.INTEGER, 3);
+        assertEquals(0, router.applyAsInt(row(-5)));
+        assertEquals(0, router.applyAsInt(row(99)));
+        assertEquals(1, router.applyAsInt(row(100)));
+        assertEquals(1, router.applyAsInt(row(199)));
+        assertEquals(2, router.applyAsInt(row(200)));
+        assertEquals(2, router.applyAsInt(row(5000)));
+    }
+
+    @Test
+    public void testHashRoute() {
+        KeyShardRouter router = KeyShardRouter.byHash("K");
+        ToIntFunction<ConvertedRow> byInteger = router.hashRoute(1, Types.INTEGER, 4);
+        assertEquals(3, byInteger.applyAsInt(row(7)));
+        assertEquals(1, byInteger.applyAsInt(row(-3)));
+        ToIntFunction<ConvertedRow> byString = router.hashRoute(0, Types.VARCHAR, 4);
+        assertEquals(Math.floorMod("x".hashCode(), 4), byString.applyAsInt(row(7)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullKey() {
+        ConvertedRow row = new ConvertedRow(1, 2);
+        KeyShardRouter.byHash("K").hashRoute(1, Types.INTEGER, 2).applyAsInt(row);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongNumberOfBounds() throws Exception {
+        KeyShardRouter.byRange("K", 100).rangeRoute(1, Types.INTEGER, 3);
+    }
+
+    @Test(expected = SQLException.class)
+    public void testRangeRequiresNumericKey() throws Exception {
+        KeyShardRouter.byRange("K", 100).rangeRoute(0, Types.VARCHAR, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBoundsMustAscend() {
+        KeyShardRouter.byRange("K", 200, 100);
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLWarning;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Paul Wolfgang
+ */
+public class LoadDataWriterTest {
+
+    private static String escape(String value) throws Exception {
+        StringWriter out = new StringWriter();
+        LoadDataWriter.appendEscaped(out, value);
+        return out.toString();
+    }
+
+    @Test
+    public void testPlainText() throws Exception {
+        assertEquals("An act relating to taxes", escape("An act relating to taxes"));
+    }
+
+    @Test
+    public void testSpecialCharacters() throws Exception {
+        assertEquals("a\\tb\\nc\\rd\\\\e\\0", escape("a\tb\nc\rd\\e\0"));
+    }
+
+    @Test
+    public void testTrailingBackslash() throws Exception {
+        assertEquals("This is a test\\\\", escape("This is a test\\"));
+    }
+
+    /**
+     * Create a Connector/J connection whose LOAD DATA statements report the
+     * given number of rows inserted and the given warnings.
+     */
+    private static Connection mysqlConnection(int inserted, SQLWarning warnings) {
+        SQLWarning[] current = {warnings};
+        Object stmt = Proxy.newProxyInstance(
+                com.mysql.jdbc.Statement.class.getClassLoader(),
+                new Class<?>[]{com.mysql.jdbc.Statement.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isWrapperFor":
+                            return true;
+                        case "unwrap":
+                            return proxy;
+                        case "executeUpdate":
+                            return inserted;
+                        case "getWarnings":
+                            return current[0];
+                        case "clearWarnings":
+                            current[0] = null;
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> method.getName().equals("createStatement")
+                ? stmt : null);
+    }
+
+    @Test
+    public void testRejectedRowsAndWarningsAreReported() throws Exception {
+        SQLWarning warnings = new SQLWarning("Duplicate entry '0' for key 'PRIMARY'");
+        for (int i = 1; i < LoadDataWriter.MAX_LOGGED_WARNINGS + 2; i++) {
+            warnings.setNextWarning(new SQLWarning("Duplicate entry '" + i
+                    + "' for key 'PRIMARY'"));
+        }
+        List<String> logged = Collections.synchronizedList(new ArrayList<>());
+        AppenderSkeleton appender = new AppenderSkeleton() {
+            @Override
+            protected void append(LoggingEvent event) {
+                logged.add(event.getRenderedMessage());
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean requiresLayout() {
+                return false;
+            }
+        };
+        Logger logger = Logger.getLogger(LoadDataWriter.class);
+        logger.addAppender(appender);
+        UploadMetrics metrics = new UploadMetrics();
+        List<ColumnMetaData> noColumns = Collections.emptyList();
+        try (LoadDataWriter writer = new LoadDataWriter(mysqlConnection(5, warnings),
+                "t", noColumns, metrics)) {
+            for (int i = 0; i < 20; i++) {
+                writer.write(new ConvertedRow(i, 0));
+            }
+            writer.flush();
+        } finally {
+            logger.removeAppender(appender);
+        }
+        UploadSummary summary = metrics.snapshot();
+        assertEquals(20, summary.getRowsWritten());
+        assertEquals(15, summary.getRowsRejected());
+        assertTrue(summary.toString().contains("20 written (15 rejected) in 1 batches"));
+        assertEquals(LoadDataWriter.MAX_LOGGED_WARNINGS + 2, logged.size());
+        assertEquals("LOAD DATA of 20 rows inserted 5; 15 rows were rejected",
+                logged.get(0));
+        assertEquals("LOAD DATA of 20 rows: Duplicate entry '0' for key 'PRIMARY'",
+                logged.get(1));
+        assertEquals("LOAD DATA of 20 rows: 2 more warnings",
+                logged.get(LoadDataWriter.MAX_LOGGED_WARNINGS + 1));
+    }
+
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import org.h2.jdbcx.JdbcDataSource;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Loads a generated workbook into an in-memory H2 database in MySQL mode with
+ * each reader and writer configuration, checks every value in the table, and
+ * measures the throughput and peak heap. The measurements are written to the
+ * file named by load.results. Since they depend on the machine, they are
+ * compared with the baselines in load-baseline.properties only when the
+ * system property load.regression is true, as it is in the regression
+ * profile; a configuration without a baseline for the size being run is then
+ * reported as skipped. The size of the workbook is set with the system
+ * properties load.rows, load.columns and load.textLength.
+ *
+ * @author Paul Wolfgang
+ */
+@RunWith(Parameterized.class)
+public class LoadRegressionTest {
+
+    private static final String TABLE = "REGRESSION";
+    private static final int ROWS = Integer.getInteger("load.rows", 20000);
+    private static final int COLUMNS = Integer.getInteger("load.columns", 10);
+    private static final int TEXT_LENGTH = Integer.getInteger("load.textLength", 20);
+    private static final Path RESULTS = Paths.get(
+            System.getProperty("load.results", "target/load-regression.properties"));
+    private static final boolean CHECK_BASELINE = Boolean.getBoolean("load.regression");
+
+    private static WorkbookGenerator generator;
+    private static byte[] workbook;
+    private static JdbcDataSource dataSource;
+    private static Connection keepAlive;
+    private static Properties baseline;
+    private static final Properties results = new Properties();
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{
+            {"workbook-insert", (Consumer<DoUpload>) doUpload -> {
+            }},
+            {"streaming-insert", (Consumer<DoUpload>) doUpload -> {
+                doUpload.setStreaming(true);
+            }},
+            {"streaming-batch", (Consumer<DoUpload>) doUpload -> {
+                doUpload.setStreaming(true);
+                doUpload.setWriteMode(WriteMode.BATCH);
+            }},
+            {"mapped-batch", (Consumer<DoUpload>) doUpload -> {
+                doUpload.setMappedSharedStrings(true);
+                doUpload.setWriteMode(WriteMode.BATCH);
+            }},
+            {"pipeline-batch", (Consumer<DoUpload>) doUpload -> {
+                doUpload.setStreaming(true);
+                doUpload.setWriteMode(WriteMode.BATCH);
+                doUpload.setConverterThreads(2);
+                doUpload.setWriterThreads(2);
+            }}
+        });
+    }
+
+    private final String name;
+    private final Consumer<DoUpload> configuration;
+
+    public LoadRegressionTest(String name, Consumer<DoUpload> configuration) {
+        this.name = name;
+        this.configuration = configuration;
+    }
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        generator = new WorkbookGenerator(ROWS, COLUMNS, TEXT_LENGTH);
+        workbook = generator.generate("Data");
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:regression;MODE=MySQL");
+        keepAlive = dataSource.getConnection();
+        baseline = new Properties();
+        try (InputStream in = LoadRegressionTest.class
+                .getResourceAsStream("load-baseline.properties")) {
+            if (in != null) {
+                baseline.load(in);
+            }
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        keepAlive.close();
+        Path parent = RESULTS.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        try (OutputStream out = Files.newOutputStream(RESULTS)) {
+            results.store(out, "LoadRegressionTest " + ROWS + " rows, "
+                    + COLUMNS + " columns, text length " + TEXT_LENGTH);
+        }
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.executeUpdate("DROP TABLE IF EXISTS " + TABLE);
+            stmt.executeUpdate(generator.createTableStatement(TABLE));
+        }
+        DoUpload doUpload = new DoUpload(dataSource);
+        doUpload.setMetadataCache(null);
+        configuration.accept(doUpload);
+        System.gc();
+        UploadSummary summary;
+        long elapsedNanos;
+        long peakHeapMB;
+        try (HeapMonitor heap = new HeapMonitor()) {
+            long startNanos = System.nanoTime();
+            summary = doUpload.run(new ByteArrayInputStream(workbook), "Data", TABLE);
+            elapsedNanos = System.nanoTime() - startNanos;
+            peakHeapMB = heap.getPeak() >> 20;
+        }
+        assertNull(String.valueOf(summary.getError()), summary.getError());
+        assertEquals(ROWS, summary.getRowsWritten());
+        checkTable();
+
+        double rowsPerSecond = ROWS * 1.0e9 / elapsedNanos;
+        String key = name + "." + ROWS;
+        results.setProperty(key + ".rowsPerSecond", String.format("%.0f", rowsPerSecond));
+        results.setProperty(key + ".peakHeapMB", Long.toString(peakHeapMB));
+        if (!CHECK_BASELINE) {
+            return;
+        }
+        double tolerance = Double.parseDouble(baseline.getProperty("tolerance", "0.5"));
+        String expectedRate = baseline.getProperty(key + ".rowsPerSecond");
+        if (expectedRate != null) {
+            double minimum = Double.parseDouble(expectedRate) * (1.0 - tolerance);
+            assertTrue(String.format("%s: %.0f rows/s is below %.0f", key,
+                    rowsPerSecond, minimum), rowsPerSecond >= minimum);
+        }
+        String expectedHeap = baseline.getProperty(key + ".peakHeapMB");
+        if (expectedHeap != null) {
+            double maximum = Double.parseDouble(expectedHeap) * (1.0 + tolerance);
+            assertTrue(String.format("%s: peak heap %d MB is above %.0f MB", key,
+                    peakHeapMB, maximum), peakHeapMB <= maximum);
+        }
+        assumeTrue(key + " has no baseline; measured but not checked",
+                expectedRate != null || expectedHeap != null);
+    }
+
+    /**
+     * Check every value of the table. The rows are ordered by the first
+     * INTEGER column, whose value increases with the row.
+     */
+    private void checkTable() throws Exception {
+        int orderColumn = -1;
+        for (int column = 0; column < COLUMNS && orderColumn < 0; column++) {
+            if (generator.getColumnType(column) == WorkbookGenerator.ColumnType.INTEGER) {
+                orderColumn = column;
+            }
+        }
+        assertTrue("The sheet needs an INTEGER column", orderColumn >= 0);
+        try (Statement stmt = keepAlive.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT * FROM " + TABLE
+                        + " ORDER BY " + generator.getColumnName(orderColumn))) {
+            int row = 0;
+            while (rs.next()) {
+                for (int column = 0; column < COLUMNS; column++) {
+                    String label = generator.getColumnName(column);
+                    String message = "row " + row + " column " + label;
+                    switch (generator.getColumnType(column)) {
+                        case VARCHAR:
+                            assertEquals(message, generator.text(row, column),
+                                    rs.getString(label));
+                            break;
+                        case INTEGER:
+                            assertEquals(message, generator.integer(row, column),
+                                    rs.getLong(label));
+                            break;
+                        case DOUBLE:
+                            assertEquals(message, generator.decimal(row, column),
+                                    rs.getDouble(label), 0.0);
+                            break;
+                        case DATE:
+                            assertEquals(message, generator.epochDay(row, column),
+                                    rs.getDate(label).toLocalDate().toEpochDay());
+                            break;
+                        case BIT:
+                            assertEquals(message, generator.bit(row, column),
+                                    rs.getBoolean(label));
+                            break;
+                    }
+                }
+                row++;
+            }
+            assertEquals(ROWS, row);
+        }
+    }
+
+    /**
+     * Records the largest amount of heap in use at one time while it is open.
+     * The heap is sampled from each garbage collection notification, just
+     * before the collection, and from the MemoryMXBean when getPeak is
+     * called. The peak usage of each heap pool is not used since the pools
+     * reach their peaks at different times.
+     */
+    private static class HeapMonitor implements NotificationListener, AutoCloseable {
+
+        private final Set<String> heapPools = new HashSet<>();
+        private final AtomicLong peak = new AtomicLong();
+
+        HeapMonitor() {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    heapPools.add(pool.getName());
+                }
+            }
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) gc).addNotificationListener(this, null, null);
+            }
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (!notification.getType().equals(
+                    GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                return;
+            }
+            Map<String, MemoryUsage> beforeGc = GarbageCollectionNotificationInfo
+                    .from((CompositeData) notification.getUserData())
+                    .getGcInfo().getMemoryUsageBeforeGc();
+            long used = 0;
+            for (Map.Entry<String, MemoryUsage> entry : beforeGc.entrySet()) {
+                if (heapPools.contains(entry.getKey())) {
+                    used += entry.getValue().getUsed();
+                }
+            }
+            record(used);
+        }
+
+        private void record(long used) {
+            peak.accumulateAndGet(used, Math::max);
+        }
+
+        long getPeak() {
+            record(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+            return peak.get();
+        }
+
+        @Override
+        public void close() {
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                try {
+                    ((NotificationEmitter) gc).removeNotificationListener(this);
+                } catch (ListenerNotFoundException ex) {
+                    // not registered
+                }
+            }
+        }
+    }
+
+}
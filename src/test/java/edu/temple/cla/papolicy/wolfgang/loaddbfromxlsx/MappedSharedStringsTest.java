@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Paul Wolfgang
+ */
+public class MappedSharedStringsTest {
+
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+            + " count=\"5\" uniqueCount=\"4\">"
+            + "<si><t>Bill title</t></si>"
+            + "<si><r><rPr><b/></rPr><t>Rich </t></r><r><t xml:space=\"preserve\">text </t></r></si>"
+            + "<si><t/></si>"
+            + "<si><t>Caf\u00e9 \u20ac &amp; \ud83d\ude00</t></si>"
+            + "</sst>";
+
+    @Test
+    public void testStrings() throws Exception {
+        try (MappedSharedStrings strings = MappedSharedStrings.load(
+                new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)))) {
+            assertEquals(4, strings.getCount());
+            assertEquals("Caf\u00e9 \u20ac & \ud83d\ude00", strings.getEntryAt(3));
+            assertEquals("Bill title", strings.getEntryAt(0));
+            assertEquals("Rich text ", strings.getEntryAt(1));
+            assertEquals("", strings.getEntryAt(2));
+        }
+    }
+
+    @Test
+    public void testNoSharedStrings() throws Exception {
+        try (MappedSharedStrings strings = MappedSharedStrings.load(null)) {
+            assertEquals(0, strings.getCount());
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testMissingString() throws Exception {
+        try (MappedSharedStrings strings = MappedSharedStrings.load(
+                new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)))) {
+            strings.getEntryAt(4);
+        }
+    }
+
+}
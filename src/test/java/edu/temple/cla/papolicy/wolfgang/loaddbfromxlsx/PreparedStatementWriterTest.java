@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests of PreparedStatementWriter with a Connector/J connection, which is
+ * simulated by a proxy that records rewriteBatchedStatements.
+ *
+ * @author Paul Wolfgang
+ */
+public class PreparedStatementWriterTest {
+
+    private static final List<ColumnMetaData> NO_COLUMNS = Collections.emptyList();
+
+    private final boolean[] rewrite = new boolean[1];
+
+    private Connection mysqlConnection() {
+        PreparedStatement stmt = (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> null);
+        return (Connection) Proxy.newProxyInstance(
+                com.mysql.jdbc.Connection.class.getClassLoader(),
+                new Class<?>[]{com.mysql.jdbc.Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isWrapperFor":
+                            return true;
+                        case "unwrap":
+                            return proxy;
+                        case "getRewriteBatchedStatements":
+                            return rewrite[0];
+                        case "setRewriteBatchedStatements":
+                            rewrite[0] = (Boolean) args[0];
+                            return null;
+                        case "prepareStatement":
+                            return stmt;
+                        case "createStatement":
+                            throw new SQLException("No server");
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Test
+    public void testRewriteIsRestoredOnClose() throws Exception {
+        Connection conn = mysqlConnection();
+        try (PreparedStatementWriter writer = new PreparedStatementWriter(conn, "t",
+                NO_COLUMNS, 100, new UploadMetrics())) {
+            assertTrue(rewrite[0]);
+        }
+        assertFalse(rewrite[0]);
+    }
+
+    @Test
+    public void testRewriteSetByTheUrlIsKept() throws Exception {
+        rewrite[0] = true;
+        Connection conn = mysqlConnection();
+        try (PreparedStatementWriter writer = new PreparedStatementWriter(conn, "t",
+                NO_COLUMNS, 100, new UploadMetrics())) {
+            assertTrue(rewrite[0]);
+        }
+        assertTrue(rewrite[0]);
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Paul Wolfgang
+ */
+public class RowHasherTest {
+
+    private static final int[] TYPES = {java.sql.Types.INTEGER,
+        java.sql.Types.VARCHAR, java.sql.Types.DOUBLE};
+    private static final int[] ALL = {0, 1, 2};
+    private static final int[] KEY = {0};
+
+    private static ConvertedRow row(long id, String name, double value) {
+        ConvertedRow row = new ConvertedRow(1, 3);
+        row.setLong(0, id);
+        if (name != null) {
+            row.setObject(1, name);
+        }
+        row.setDouble(2, value);
+        return row;
+    }
+
+    @Test
+    public void testEqualRowsHaveEqualHashes() {
+        assertEquals(RowHasher.hash(row(1, "a", 2.5), ALL, TYPES),
+                RowHasher.hash(row(1, "a", 2.5), ALL, TYPES));
+        assertEquals(RowHasher.hash(row(1, "a", 0.0), ALL, TYPES),
+                RowHasher.hash(row(1, "a", -0.0), ALL, TYPES));
+    }
+
+    @Test
+    public void testChangedRowsHaveDifferentHashes() {
+        long hash = RowHasher.hash(row(1, "a", 2.5), ALL, TYPES);
+        assertNotEquals(hash, RowHasher.hash(row(1, "b", 2.5), ALL, TYPES));
+        assertNotEquals(hash, RowHasher.hash(row(1, null, 2.5), ALL, TYPES));
+        assertNotEquals(hash, RowHasher.hash(row(1, "", 2.5), ALL, TYPES));
+        assertNotEquals(hash, RowHasher.hash(row(1, "a", 2.75), ALL, TYPES));
+        assertNotEquals(hash, RowHasher.hash(row(2, "a", 2.5), ALL, TYPES));
+    }
+
+    @Test
+    public void testKeyHashIgnoresOtherColumns() {
+        assertEquals(RowHasher.hash(row(1, "a", 2.5), KEY, TYPES),
+                RowHasher.hash(row(1, "b", 3.5), KEY, TYPES));
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of ShardedWriter loading two in-memory H2 databases in MySQL mode.
+ *
+ * @author Paul Wolfgang
+ */
+public class ShardedWriterTest {
+
+    private final List<JdbcDataSource> shards = new ArrayList<>();
+    private final List<Connection> keepAlive = new ArrayList<>();
+
+    /**
+     * DoUpload that records the writers it creates.
+     */
+    private static class TrackingUpload extends DoUpload {
+
+        final List<TrackedWriter> writers = Collections.synchronizedList(new ArrayList<>());
+
+        TrackingUpload(DataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        RowWriter createWriter(Connection conn, String tableName,
+                List<ColumnMetaData> columns, UploadMetrics metrics) throws SQLException {
+            TrackedWriter writer = new TrackedWriter(
+                    super.createWriter(conn, tableName, columns, metrics));
+            writers.add(writer);
+            return writer;
+        }
+    }
+
+    /**
+     * RowWriter that records whether it was closed.
+     */
+    private static class TrackedWriter implements RowWriter {
+
+        final RowWriter writer;
+        volatile boolean closed;
+
+        TrackedWriter(RowWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(ConvertedRow row) throws SQLException {
+            writer.write(row);
+        }
+
+        @Override
+        public void flush() throws SQLException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            closed = true;
+            writer.close();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            JdbcDataSource dataSource = new JdbcDataSource();
+            dataSource.setURL("jdbc:h2:mem:shard" + i + ";MODE=MySQL");
+            Connection conn = dataSource.getConnection();
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE items (id INTEGER PRIMARY KEY,"
+                        + " name VARCHAR(20), amount INTEGER"
+                        + " CONSTRAINT limit_amount CHECK (amount < 1000))");
+            }
+            shards.add(dataSource);
+            keepAlive.add(conn);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Connection conn : keepAlive) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DROP TABLE items");
+            }
+            conn.close();
+        }
+    }
+
+    private UploadSummary upload(TrackingUpload doUpload, String csv) {
+        doUpload.setMetadataCache(null);
+        doUpload.setInputFormat(InputFormat.CSV);
+        doUpload.setShards(new ArrayList<>(shards), KeyShardRouter.byRange("id", 100));
+        return doUpload.run(new ByteArrayInputStream(
+                csv.getBytes(StandardCharsets.UTF_8)), null, "items");
+    }
+
+    private List<Integer> ids(int shard) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Statement stmt = keepAlive.get(shard).createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT id FROM items ORDER BY id")) {
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+
+    @Test
+    public void testRowsAreRoutedToTheirShards() throws Exception {
+        TrackingUpload doUpload = new TrackingUpload(shards.get(0));
+        UploadSummary summary = upload(doUpload, "id,name,amount\n"
+                + "1,a,1\n150,b,2\n2,c,3\n99,d,4\n100,e,5\n300,f,6\n");
+        assertTrue(summary.toString(), summary.isSuccessful());
+        assertEquals(6, summary.getRowsWritten());
+        assertEquals(Arrays.asList(1, 2, 99), ids(0));
+        assertEquals(Arrays.asList(100, 150, 300), ids(1));
+        assertEquals(2, doUpload.writers.size());
+        for (TrackedWriter writer : doUpload.writers) {
+            assertTrue(writer.closed);
+        }
+    }
+
+    @Test
+    public void testShardFailureClosesTheOthers() throws Exception {
+        StringBuilder csv = new StringBuilder("id,name,amount\n");
+        csv.append("100,bad,5000\n");
+        for (int i = 0; i < 2000; i++) {
+            csv.append(i % 2 == 0 ? -i : 101 + i)
+                    .append(",row,").append(i % 1000).append('\n');
+        }
+        TrackingUpload doUpload = new TrackingUpload(shards.get(0));
+        doUpload.setWriteMode(WriteMode.BATCH);
+        doUpload.setBatchSize(1);
+        doUpload.setQueueCapacity(10);
+        UploadSummary summary = upload(doUpload, csv.toString());
+        assertFalse(summary.isSuccessful());
+        assertTrue(String.valueOf(summary.getError()),
+                summary.getError().getMessage().toUpperCase().contains("AMOUNT < 1000"));
+        assertEquals(2, doUpload.writers.size());
+        for (TrackedWriter writer : doUpload.writers) {
+            assertTrue(writer.closed);
+        }
+        assertTrue(ids(1).isEmpty());
+    }
+
+}
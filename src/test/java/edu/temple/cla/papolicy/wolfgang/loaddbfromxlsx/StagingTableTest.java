@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests of StagingTable. H2 does not provide GET_LOCK, CREATE TABLE ...
+ * LIKE, SHOW INDEX or RENAME TABLE, so the statements are run against a
+ * FakeMySql that keeps the tables and their indexes in memory.
+ *
+ * @author Paul Wolfgang
+ */
+public class StagingTableTest {
+
+    @Test
+    public void testCreateAndSwap() throws Exception {
+        FakeMySql mysql = new FakeMySql(true);
+        mysql.addIndex("t", "PRIMARY", 1, "id", false, null, null, "", true);
+        mysql.addIndex("t", "idx_name", 1, "name", false, 10, "A", "it's", true);
+        mysql.addIndex("t", "uq_code", 1, "code", true, null, "D", "", true);
+        mysql.addIndex("t", "idx_hidden", 1, "hidden", false, null, "A", "", false);
+        StagingTable staging = new StagingTable(mysql.connect(), "t");
+        String name = staging.getName();
+        assertTrue(name.startsWith("t_staging_"));
+        staging.create();
+        assertTrue(mysql.tables.contains(name));
+        assertEquals(Arrays.asList("PRIMARY"), mysql.indexNames(name));
+        assertEquals("ALTER TABLE " + name + " DROP INDEX `idx_name`,"
+                + " DROP INDEX `uq_code`, DROP INDEX `idx_hidden`",
+                mysql.last("ALTER TABLE"));
+        staging.swap();
+        assertEquals("ALTER TABLE " + name
+                + " ADD INDEX `idx_name` (`name`(10)) COMMENT 'it''s',"
+                + " ADD UNIQUE INDEX `uq_code` (`code` DESC),"
+                + " ADD INDEX `idx_hidden` (`hidden`) INVISIBLE",
+                mysql.last("ALTER TABLE"));
+        assertEquals(new HashSet<>(Arrays.asList("t")), mysql.tables);
+        assertTrue(mysql.locks.isEmpty());
+    }
+
+    @Test
+    public void testAutoIncrementAndExpressionIndexesAreKept() throws Exception {
+        FakeMySql mysql = new FakeMySql(false);
+        mysql.autoIncrementColumn = "seq";
+        mysql.addIndex("t", "PRIMARY", 1, "id", true, null, "A", "", true);
+        mysql.addIndex("t", "idx_seq", 1, "seq", false, null, "A", "", true);
+        mysql.addIndex("t", "idx_seq", 2, "name", false, null, "A", "", true);
+        mysql.addIndex("t", "idx_name_seq", 1, "name", false, null, "A", "", true);
+        mysql.addIndex("t", "idx_name_seq", 2, "seq", false, null, "A", "", true);
+        mysql.addIndex("t", "idx_expr", 1, null, false, null, "A", "", true);
+        StagingTable staging = new StagingTable(mysql.connect(), "t");
+        staging.create();
+        assertEquals(Arrays.asList("PRIMARY", "idx_seq", "idx_expr"),
+                mysql.indexNames(staging.getName()));
+        staging.swap();
+        assertEquals("ALTER TABLE " + staging.getName()
+                + " ADD INDEX `idx_name_seq` (`name`, `seq`)",
+                mysql.last("ALTER TABLE"));
+    }
+
+    @Test
+    public void testDropAfterFailedSwap() throws Exception {
+        FakeMySql mysql = new FakeMySql(false);
+        mysql.addIndex("t", "uq_code", 1, "code", true, null, "A", "", true);
+        StagingTable staging = new StagingTable(mysql.connect(), "t");
+        staging.create();
+        mysql.failOn("ALTER TABLE " + staging.getName() + " ADD");
+        try {
+            staging.swap();
+            fail("Expected SQLException");
+        } catch (SQLException sqlex) {
+            assertEquals("Duplicate entry", sqlex.getMessage());
+        }
+        assertEquals(Arrays.asList("uq_code"), mysql.indexNames("t"));
+        staging.drop();
+        assertEquals(new HashSet<>(Arrays.asList("t")), mysql.tables);
+        assertTrue(mysql.locks.isEmpty());
+        assertFalse(mysql.executed.stream().anyMatch(sql -> sql.startsWith("RENAME")));
+    }
+
+    @Test
+    public void testOldTableThatCannotBeDroppedIsLeft() throws Exception {
+        FakeMySql mysql = new FakeMySql(false);
+        mysql.addIndex("t", "PRIMARY", 1, "id", true, null, "A", "", true);
+        StagingTable staging = new StagingTable(mysql.connect(), "t");
+        staging.create();
+        String oldName = staging.getName().replace("_staging_", "_old_");
+        mysql.failOn("DROP TABLE " + oldName);
+        staging.swap();
+        assertEquals(new HashSet<>(Arrays.asList("t", oldName)), mysql.tables);
+        assertTrue(mysql.locks.isEmpty());
+        staging.drop();
+        assertEquals(new HashSet<>(Arrays.asList("t", oldName)), mysql.tables);
+    }
+
+    @Test
+    public void testSecondReplaceOfTableFails() throws Exception {
+        FakeMySql mysql = new FakeMySql(false);
+        mysql.addIndex("t", "PRIMARY", 1, "id", true, null, "A", "", true);
+        StagingTable first = new StagingTable(mysql.connect(), "t");
+        first.create();
+        StagingTable second = new StagingTable(mysql.connect(), "t");
+        try {
+            second.create();
+            fail("Expected SQLException");
+        } catch (SQLException sqlex) {
+            assertEquals("Table t is being replaced by another load", sqlex.getMessage());
+        }
+        second.drop();
+        assertTrue(mysql.tables.contains(first.getName()));
+        assertFalse(mysql.tables.contains(second.getName()));
+        first.drop();
+        assertTrue(mysql.locks.isEmpty());
+        StagingTable third = new StagingTable(mysql.connect(), "t");
+        third.create();
+        third.swap();
+        assertEquals(new HashSet<>(Arrays.asList("t")), mysql.tables);
+    }
+
+    @Test
+    public void testTableWithTriggersIsRefused() throws Exception {
+        FakeMySql mysql = new FakeMySql(false);
+        mysql.addIndex("t", "PRIMARY", 1, "id", true, null, "A", "", true);
+        mysql.triggers = 1;
+        StagingTable staging = new StagingTable(mysql.connect(), "t");
+        try {
+            staging.create();
+            fail("Expected SQLException");
+        } catch (SQLException sqlex) {
+            assertEquals("Table t has triggers and cannot be replaced", sqlex.getMessage());
+        }
+        staging.drop();
+        assertEquals(new HashSet<>(Arrays.asList("t")), mysql.tables);
+        assertTrue(mysql.locks.isEmpty());
+    }
+
+    /**
+     * The part of a MySQL server used by StagingTable. Each table is
+     * represented by its SHOW INDEX rows, and each connection holds its named
+     * locks until it releases them. Statements that start with a prefix given
+     * to failOn throw an SQLException.
+     */
+    private static class FakeMySql {
+
+        private static final String[] INDEX_LABELS = {"Table", "Non_unique",
+            "Key_name", "Seq_in_index", "Column_name", "Collation", "Sub_part",
+            "Index_type", "Comment", "Index_comment", "Visible"};
+        private static final Pattern RENAME
+                = Pattern.compile("RENAME TABLE (\\w+) TO (\\w+), (\\w+) TO (\\w+)");
+
+        private final boolean hasVisible;
+        private final Set<String> tables = new HashSet<>();
+        private final Map<String, List<Object[]>> indexes = new HashMap<>();
+        private final Map<String, Connection> locks = new HashMap<>();
+        private final List<String> executed = new ArrayList<>();
+        private final List<String> failing = new ArrayList<>();
+        private String autoIncrementColumn;
+        private int triggers;
+
+        FakeMySql(boolean hasVisible) {
+            this.hasVisible = hasVisible;
+        }
+
+        void addIndex(String table, String keyName, int seq, String column,
+                boolean unique, Integer subPart, String collation,
+                String comment, boolean visible) {
+            tables.add(table);
+            indexes.computeIfAbsent(table, t -> new ArrayList<>()).add(new Object[]{
+                table, unique ? 0 : 1, keyName, seq, column, collation, subPart,
+                "BTREE", "", comment, visible ? "YES" : "NO"});
+        }
+
+        void failOn(String prefix) {
+            failing.add(prefix);
+        }
+
+        List<String> indexNames(String table) {
+            List<String> names = new ArrayList<>();
+            indexes.getOrDefault(table, new ArrayList<>()).forEach(row -> {
+                if (!names.contains((String) row[2])) {
+                    names.add((String) row[2]);
+                }
+            });
+            return names;
+        }
+
+        String last(String prefix) {
+            String found = null;
+            for (String sql : executed) {
+                if (sql.startsWith(prefix)) {
+                    found = sql;
+                }
+            }
+            return found;
+        }
+
+        Connection connect() {
+            Connection[] conn = new Connection[1];
+            conn[0] = proxy(Connection.class, (method, args) -> {
+                switch (method) {
+                    case "createStatement":
+                        return statement(conn[0], null);
+                    case "prepareStatement":
+                        return statement(conn[0], (String) args[0]);
+                    default:
+                        return null;
+                }
+            });
+            return conn[0];
+        }
+
+        private Statement statement(Connection conn, String preparedSql) {
+            List<String> params = new ArrayList<>();
+            return proxy(PreparedStatement.class, (method, args) -> {
+                switch (method) {
+                    case "setString":
+                        params.add((String) args[1]);
+                        return null;
+                    case "executeUpdate":
+                        update((String) args[0]);
+                        return 0;
+                    case "executeQuery":
+                        return args == null
+                                ? query(conn, preparedSql, params)
+                                : query(conn, (String) args[0], params);
+                    default:
+                        return null;
+                }
+            });
+        }
+
+        private void update(String sql) throws SQLException {
+            check(sql);
+            if (sql.startsWith("CREATE TABLE ")) {
+                String[] words = sql.split(" ");
+                tables.add(words[2]);
+                List<Object[]> copy = new ArrayList<>();
+                indexes.getOrDefault(words[4], new ArrayList<>())
+                        .forEach(row -> copy.add(row.clone()));
+                indexes.put(words[2], copy);
+            } else if (sql.startsWith("ALTER TABLE ")) {
+                String table = sql.split(" ")[2];
+                Matcher drop = Pattern.compile("DROP INDEX `(\\w+)`").matcher(sql);
+                while (drop.find()) {
+                    String keyName = drop.group(1);
+                    indexes.get(table).removeIf(row -> row[2].equals(keyName));
+                }
+            } else if (sql.startsWith("RENAME TABLE ")) {
+                Matcher m = RENAME.matcher(sql);
+                assertTrue(sql, m.matches());
+                if (tables.contains(m.group(2))) {
+                    throw new SQLException("Table '" + m.group(2) + "' already exists");
+                }
+                rename(m.group(1), m.group(2));
+                rename(m.group(3), m.group(4));
+            } else if (sql.startsWith("DROP TABLE ")) {
+                String table = sql.substring("DROP TABLE ".length());
+                tables.remove(table);
+                indexes.remove(table);
+            } else {
+                fail("Unexpected statement " + sql);
+            }
+        }
+
+        private void rename(String from, String to) {
+            tables.remove(from);
+            tables.add(to);
+            indexes.put(to, indexes.remove(from));
+        }
+
+        private ResultSet query(Connection conn, String sql, List<String> params)
+                throws SQLException {
+            check(sql);
+            if (sql.contains("GET_LOCK")) {
+                Connection holder = locks.putIfAbsent(params.get(0), conn);
+                return result(new String[]{"lock"},
+                        new Object[]{holder == null || holder == conn ? 1 : 0});
+            } else if (sql.contains("RELEASE_LOCK")) {
+                locks.remove(params.get(0), conn);
+                return result(new String[]{"lock"}, new Object[]{1});
+            } else if (sql.contains("REFERENTIAL_CONSTRAINTS")) {
+                return result(new String[]{"count"}, new Object[]{0});
+            } else if (sql.contains("TRIGGERS")) {
+                return result(new String[]{"count"}, new Object[]{triggers});
+            } else if (sql.contains("information_schema.TABLES")) {
+                return result(new String[]{"count"},
+                        new Object[]{tables.contains(params.get(0)) ? 1 : 0});
+            } else if (sql.contains("auto_increment")) {
+                return autoIncrementColumn == null
+                        ? result(new String[]{"COLUMN_NAME"})
+                        : result(new String[]{"COLUMN_NAME"},
+                                new Object[]{autoIncrementColumn});
+            } else if (sql.startsWith("SHOW INDEX FROM ")) {
+                String table = sql.substring("SHOW INDEX FROM ".length());
+                String[] labels = hasVisible ? INDEX_LABELS
+                        : Arrays.copyOf(INDEX_LABELS, INDEX_LABELS.length - 1);
+                return result(labels, indexes.get(table).toArray(new Object[0][]));
+            }
+            fail("Unexpected query " + sql);
+            return null;
+        }
+
+        private void check(String sql) throws SQLException {
+            executed.add(sql);
+            for (String prefix : failing) {
+                if (sql.startsWith(prefix)) {
+                    throw new SQLException(sql.startsWith("ALTER")
+                            ? "Duplicate entry" : "Unable to run " + sql);
+                }
+            }
+        }
+
+        private static ResultSet result(String[] labels, Object[]... rows) {
+            int[] row = {-1};
+            boolean[] wasNull = new boolean[1];
+            List<String> labelList = Arrays.asList(labels);
+            ResultSetMetaData metaData = proxy(ResultSetMetaData.class,
+                    (method, args) -> method.equals("getColumnCount")
+                    ? labels.length : labels[(Integer) args[0] - 1]);
+            return proxy(ResultSet.class, (method, args) -> {
+                switch (method) {
+                    case "next":
+                        return ++row[0] < rows.length;
+                    case "getMetaData":
+                        return metaData;
+                    case "wasNull":
+                        return wasNull[0];
+                    case "getString":
+                    case "getInt":
+                        int column = args[0] instanceof Integer ? (Integer) args[0] - 1
+                                : labelList.indexOf((String) args[0]);
+                        Object value = rows[row[0]][column];
+                        wasNull[0] = value == null;
+                        if (method.equals("getString")) {
+                            return value == null ? null : value.toString();
+                        }
+                        return value == null ? 0 : (Integer) value;
+                    default:
+                        return null;
+                }
+            });
+        }
+
+        private interface Handler {
+
+            Object invoke(String method, Object[] args) throws SQLException;
+        }
+
+        private static <T> T proxy(Class<T> type, Handler handler) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(),
+                    new Class<?>[]{type},
+                    (proxy, method, args) -> handler.invoke(method.getName(), args)));
+        }
+    }
+
+}
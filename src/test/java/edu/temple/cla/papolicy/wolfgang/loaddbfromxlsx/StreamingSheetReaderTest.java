@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author Paul Wolfgang
+ */
+public class StreamingSheetReaderTest {
+
+    private static byte[] workbookBytes;
+
+    @BeforeClass
+    public static void createWorkbook() throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            wb.createSheet("Other").createRow(0).createCell(0).setCellValue("x");
+            XSSFSheet sheet = wb.createSheet("Data");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Name");
+            header.createCell(1).setCellValue("Count");
+            header.createCell(2).setCellValue("Flag");
+            Row row1 = sheet.createRow(1);
+            row1.createCell(0).setCellValue("Alpha");
+            row1.createCell(1).setCellValue(12.5);
+            row1.createCell(2).setCellValue(true);
+            Row row3 = sheet.createRow(3);
+            row3.createCell(1).setCellValue(29046);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            wb.write(out);
+            workbookBytes = out.toByteArray();
+        }
+    }
+
+    private static List<SheetRow> readAll(SheetReader reader, String sheetName)
+            throws Exception {
+        List<SheetRow> rows = new ArrayList<>();
+        reader.read(new ByteArrayInputStream(workbookBytes), sheetName, rows::add);
+        return rows;
+    }
+
+    @Test
+    public void testSameRowsAsWorkbookReader() throws Exception {
+        List<SheetRow> expected = readAll(new WorkbookSheetReader(), "Data");
+        List<SheetRow> result = readAll(new StreamingSheetReader(), "Data");
+        assertEquals(expected.size(), result.size());
+        for (int i = 0; i < expected.size(); i++) {
+            SheetRow expectedRow = expected.get(i);
+            SheetRow resultRow = result.get(i);
+            assertEquals(expectedRow.getRowNum(), resultRow.getRowNum());
+            assertEquals(expectedRow.size(), resultRow.size());
+            Iterator<SheetCell> resultCells = resultRow.iterator();
+            for (SheetCell expectedCell : expectedRow) {
+                SheetCell resultCell = resultCells.next();
+                assertEquals(expectedCell.getColumnIndex(), resultCell.getColumnIndex());
+                assertEquals(expectedCell.getCellTypeEnum(), resultCell.getCellTypeEnum());
+                switch (expectedCell.getCellTypeEnum()) {
+                    case STRING:
+                        assertEquals(expectedCell.getStringCellValue(),
+                                resultCell.getStringCellValue());
+                        break;
+                    case NUMERIC:
+                        assertEquals(expectedCell.getNumericCellValue(),
+                                resultCell.getNumericCellValue(), 0.0);
+                        break;
+                    case BOOLEAN:
+                        assertEquals(expectedCell.getBooleanCellValue(),
+                                resultCell.getBooleanCellValue());
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRowIndexSkipsMissingRows() throws Exception {
+        List<SheetRow> result = readAll(new StreamingSheetReader(), "Data");
+        assertEquals(3, result.size());
+        SheetRow last = result.get(2);
+        assertEquals(3, last.getRowNum());
+        SheetCell cell = last.iterator().next();
+        assertEquals(1, cell.getColumnIndex());
+        assertEquals(CellType.NUMERIC, cell.getCellTypeEnum());
+    }
+
+    @Test
+    public void testUnwantedRowsAreSkipped() throws Exception {
+        for (SheetReader reader : new SheetReader[]{new WorkbookSheetReader(),
+            new StreamingSheetReader()}) {
+            List<SheetRow> rows = new ArrayList<>();
+            reader.read(new ByteArrayInputStream(workbookBytes), "Data",
+                    new RowHandler() {
+                @Override
+                public void handleRow(SheetRow row) {
+                    rows.add(row);
+                }
+
+                @Override
+                public boolean wantsRow(int rowIndex) {
+                    return rowIndex != 1;
+                }
+            });
+            assertEquals(2, rows.size());
+            assertEquals(0, rows.get(0).getRowNum());
+            assertEquals(3, rows.get(1).getRowNum());
+            assertEquals(1, rows.get(1).size());
+        }
+    }
+
+    @Test
+    public void testUnwantedColumnsAreSkipped() throws Exception {
+        for (SheetReader reader : new SheetReader[]{new WorkbookSheetReader(),
+            new StreamingSheetReader()}) {
+            List<SheetRow> rows = new ArrayList<>();
+            reader.read(new ByteArrayInputStream(workbookBytes), "Data",
+                    new RowHandler() {
+                @Override
+                public void handleRow(SheetRow row) {
+                    rows.add(row);
+                }
+
+                @Override
+                public boolean wantsColumn(int columnIndex) {
+                    return columnIndex != 1;
+                }
+            });
+            assertEquals(3, rows.size());
+            assertEquals(2, rows.get(0).size());
+            assertEquals(2, rows.get(1).size());
+            assertEquals(0, rows.get(2).size());
+        }
+    }
+
+    @Test
+    public void testColumnIndex() {
+        assertEquals(0, StreamingSheetReader.SheetHandler.columnIndex("A1"));
+        assertEquals(25, StreamingSheetReader.SheetHandler.columnIndex("Z10"));
+        assertEquals(26, StreamingSheetReader.SheetHandler.columnIndex("AA3"));
+        assertEquals(16383, StreamingSheetReader.SheetHandler.columnIndex("XFD1048576"));
+    }
+
+    @Test
+    public void testIsoDateToExcelDate() {
+        assertEquals(1.0, StreamingSheetReader.SheetHandler
+                .isoDateToExcelDate("1900-01-01"), 0.0);
+        assertEquals(59.0, StreamingSheetReader.SheetHandler
+                .isoDateToExcelDate("1900-02-28"), 0.0);
+        assertEquals(61.0, StreamingSheetReader.SheetHandler
+                .isoDateToExcelDate("1900-03-01"), 0.0);
+        assertEquals(43163.5, StreamingSheetReader.SheetHandler
+                .isoDateToExcelDate("2018-03-04T12:00:00Z"), 1e-9);
+        assertEquals(0.25, StreamingSheetReader.SheetHandler
+                .isoDateToExcelDate("T06:00:00"), 1e-9);
+        for (String date : new String[]{"1900-01-01", "1900-02-28",
+            "1900-03-01", "2018-03-04"}) {
+            assertEquals(date, LocalDate.parse(date).toEpochDay(),
+                    DoUpload.excelDateToEpochDay(StreamingSheetReader.SheetHandler
+                            .isoDateToExcelDate(date)));
+        }
+    }
+
+    @Test(expected = Exception.class)
+    public void testMissingSheet() throws Exception {
+        readAll(new StreamingSheetReader(), "Missing");
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Paul Wolfgang
+ */
+public class TableMetadataCacheTest {
+
+    private static final List<String> HEADER = Arrays.asList("Name", "Count");
+
+    private final DataSource dataSource = newDataSource();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private static DataSource newDataSource() {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+                    throw new UnsupportedOperationException();
+                });
+    }
+
+    private TableMetadataCache.ColumnLoader loader() {
+        return () -> {
+            loads.incrementAndGet();
+            return Collections.<ColumnMetaData>emptyList();
+        };
+    }
+
+    @Test
+    public void testMetadataIsLoadedOnce() throws Exception {
+        TableMetadataCache cache = new TableMetadataCache(4, 1, TimeUnit.HOURS);
+        TableMapping first = cache.getMapping(dataSource, "T", HEADER, loader());
+        TableMapping second = cache.getMapping(dataSource, "T", HEADER, loader());
+        assertSame(first, second);
+        cache.getMapping(dataSource, "T", Arrays.asList("Name"), loader());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testColumnsAreShared() throws Exception {
+        TableMetadataCache cache = new TableMetadataCache(4, 1, TimeUnit.HOURS);
+        List<ColumnMetaData> columns = cache.getColumns(dataSource, "T", loader());
+        assertSame(columns, cache.getColumns(dataSource, "T", loader()));
+        cache.getMapping(dataSource, "T", HEADER, loader());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testExpiredEntriesAreReloaded() throws Exception {
+        TableMetadataCache cache = new TableMetadataCache(4, 0, TimeUnit.NANOSECONDS);
+        cache.getMapping(dataSource, "T", HEADER, loader());
+        Thread.sleep(1);
+        cache.getMapping(dataSource, "T", HEADER, loader());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedTableIsEvicted() throws Exception {
+        TableMetadataCache cache = new TableMetadataCache(2, 1, TimeUnit.HOURS);
+        cache.getMapping(dataSource, "A", HEADER, loader());
+        cache.getMapping(dataSource, "B", HEADER, loader());
+        cache.getMapping(dataSource, "A", HEADER, loader());
+        cache.getMapping(dataSource, "C", HEADER, loader());
+        assertEquals(2, cache.size());
+        assertEquals(3, loads.get());
+        cache.getMapping(dataSource, "A", HEADER, loader());
+        assertEquals(3, loads.get());
+        cache.getMapping(dataSource, "B", HEADER, loader());
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        TableMetadataCache cache = new TableMetadataCache(4, 1, TimeUnit.HOURS);
+        DataSource other = newDataSource();
+        cache.getMapping(dataSource, "T", HEADER, loader());
+        cache.getMapping(other, "T", HEADER, loader());
+        cache.getMapping(dataSource, "U", HEADER, loader());
+        assertEquals(3, cache.size());
+        cache.invalidate(dataSource, "T");
+        assertEquals(2, cache.size());
+        cache.invalidate("T");
+        assertEquals(1, cache.size());
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+}
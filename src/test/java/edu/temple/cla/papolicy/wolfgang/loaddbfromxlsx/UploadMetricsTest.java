@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.h2.jdbcx.JdbcDataSource;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests of UploadMetrics, UploadSummary and the calls made to an
+ * UploadListener.
+ *
+ * @author Paul Wolfgang
+ */
+public class UploadMetricsTest {
+
+    private static final long MILLI = 1000000;
+
+    /**
+     * Records the calls made to it.
+     */
+    private static class RecordingListener implements UploadListener {
+
+        final List<UploadSummary> progress = Collections.synchronizedList(new ArrayList<>());
+        final List<Long> batches = Collections.synchronizedList(new ArrayList<>());
+        final List<UploadSummary> finished = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void progress(UploadSummary summary) {
+            progress.add(summary);
+        }
+
+        @Override
+        public void batchSent(int rows, long latencyNanos) {
+            batches.add(rows * 1000000000L + latencyNanos);
+        }
+
+        @Override
+        public void finished(UploadSummary summary) {
+            finished.add(summary);
+        }
+
+        long rowsSent() {
+            synchronized (batches) {
+                return batches.stream().mapToLong(b -> b / 1000000000L).sum();
+            }
+        }
+    }
+
+    @Test
+    public void testBatchesAreSummed() {
+        RecordingListener listener = new RecordingListener();
+        UploadMetrics metrics = new UploadMetrics(listener);
+        metrics.batchSent(100, 2 * MILLI);
+        metrics.batchSent(100, 6 * MILLI);
+        metrics.batchSent(50, 1 * MILLI);
+        metrics.rowsRejected(3);
+        UploadSummary summary = metrics.snapshot();
+        assertEquals(250, summary.getRowsWritten());
+        assertEquals(3, summary.getRowsRejected());
+        assertEquals(3, summary.getBatches());
+        assertEquals(9 * MILLI, summary.getBatchNanos());
+        assertEquals(6 * MILLI, summary.getMaxBatchNanos());
+        assertEquals(3.0, summary.getAverageBatchMillis(), 1.0e-9);
+        assertEquals(Arrays.asList(100000000000L + 2 * MILLI,
+                100000000000L + 6 * MILLI, 50000000000L + MILLI), listener.batches);
+        assertTrue(listener.finished.isEmpty());
+    }
+
+    @Test
+    public void testProgressIsReportedEveryInterval() {
+        RecordingListener listener = new RecordingListener();
+        UploadMetrics metrics = new UploadMetrics(listener);
+        for (int i = 0; i < 2 * UploadMetrics.PROGRESS_INTERVAL + 10; i++) {
+            metrics.bytesParsed(10);
+            metrics.rowRead();
+        }
+        assertEquals(2, listener.progress.size());
+        assertEquals(UploadMetrics.PROGRESS_INTERVAL, listener.progress.get(0).getRowsRead());
+        assertEquals(2 * UploadMetrics.PROGRESS_INTERVAL,
+                listener.progress.get(1).getRowsRead());
+        assertEquals(UploadMetrics.PROGRESS_INTERVAL * 10L,
+                listener.progress.get(0).getBytesParsed());
+    }
+
+    @Test
+    public void testFinishReportsOnce() {
+        RecordingListener listener = new RecordingListener();
+        UploadMetrics metrics = new UploadMetrics(listener);
+        metrics.rowRead();
+        metrics.rowRead();
+        metrics.rowSkipped();
+        metrics.batchSent(1, MILLI);
+        Exception error = new Exception("Lost connection");
+        UploadSummary summary = metrics.finish(error);
+        assertEquals(Collections.singletonList(summary), listener.finished);
+        assertEquals(2, summary.getRowsRead());
+        assertEquals(1, summary.getRowsSkipped());
+        assertEquals(1, summary.getRowsWritten());
+        assertSame(error, summary.getError());
+        assertFalse(summary.isSuccessful());
+        assertTrue(summary.getElapsedNanos() > 0);
+    }
+
+    @Test
+    public void testConcurrentUpdatesAreCounted() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        UploadMetrics metrics = new UploadMetrics(listener);
+        int threads = 4;
+        int rowsPerThread = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long latency = (t + 1) * MILLI;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < rowsPerThread; i++) {
+                        metrics.rowRead();
+                        if (i % 100 == 99) {
+                            metrics.batchSent(100, latency);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        UploadSummary summary = metrics.finish(null);
+        assertEquals(threads * rowsPerThread, summary.getRowsRead());
+        assertEquals(threads * rowsPerThread, summary.getRowsWritten());
+        assertEquals(threads * rowsPerThread / 100, summary.getBatches());
+        assertEquals(threads * MILLI, summary.getMaxBatchNanos());
+        assertEquals(2.5, summary.getAverageBatchMillis(), 1.0e-9);
+        assertEquals(threads * rowsPerThread / UploadMetrics.PROGRESS_INTERVAL,
+                listener.progress.size());
+        assertEquals(threads * rowsPerThread, listener.rowsSent());
+    }
+
+    @Test
+    public void testSummaryRatesAndText() {
+        UploadSummary summary = new UploadSummary(1000, 10, 990, 5, 65536, 4,
+                8 * MILLI, 5 * MILLI, 2000 * MILLI, false, null);
+        assertEquals(495.0, summary.getRowsPerSecond(), 1.0e-9);
+        assertEquals(2.0, summary.getAverageBatchMillis(), 1.0e-9);
+        assertEquals("1000 rows read, 10 skipped, 990 written (5 rejected) in 4 batches"
+                + " (avg 2.0 ms, max 5.0 ms), 65536 bytes parsed, 2.000 s, 495 rows/s",
+                summary.toString());
+        UploadSummary empty = new UploadSummary(0, 0, 0, 0, 0, 0, 0, 0, 0, true, null);
+        assertEquals(0.0, empty.getRowsPerSecond(), 0.0);
+        assertEquals(0.0, empty.getAverageBatchMillis(), 0.0);
+        assertTrue(empty.toString().endsWith(", skipped as already uploaded"));
+        UploadSummary failed = new UploadSummary(1, 0, 0, 0, 0, 0, 0, MILLI,
+                new Exception("Lost connection"));
+        assertTrue(failed.toString().endsWith(", failed: java.lang.Exception: Lost connection"));
+    }
+
+    @Test
+    public void testUploadReportsToListener() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:metrics;MODE=MySQL");
+        try (Connection conn = dataSource.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE items (id INTEGER PRIMARY KEY,"
+                        + " name VARCHAR(20))");
+            }
+            StringBuilder csv = new StringBuilder("id,name\n");
+            int rows = 2500;
+            for (int i = 0; i < rows; i++) {
+                csv.append(i).append(",name").append(i).append('\n');
+            }
+            RecordingListener listener = new RecordingListener();
+            DoUpload doUpload = new DoUpload(dataSource);
+            doUpload.setMetadataCache(null);
+            doUpload.setInputFormat(InputFormat.CSV);
+            doUpload.setUploadListener(listener);
+            UploadSummary summary = doUpload.run(new ByteArrayInputStream(
+                    csv.toString().getBytes(StandardCharsets.UTF_8)), null, "items");
+            assertTrue(summary.toString(), summary.isSuccessful());
+            assertEquals(rows, summary.getRowsRead());
+            assertEquals(rows, summary.getRowsWritten());
+            assertEquals(csv.length(), summary.getBytesParsed());
+            assertEquals(2, listener.progress.size());
+            assertEquals(summary.getBatches(), listener.batches.size());
+            assertEquals(rows, listener.rowsSent());
+            assertEquals(Collections.singletonList(summary), listener.finished);
+        }
+    }
+
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import edu.temple.cla.policydb.dbutilities.ColumnMetaData;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests of UploadPipeline. The rows are empty; the conversion and writing of
+ * each row is done by a DoUpload whose convertRow and createWriter are
+ * replaced by the test.
+ *
+ * @author Paul Wolfgang
+ */
+public class UploadPipelineTest {
+
+    private static final List<ColumnMetaData> NO_COLUMNS = Collections.emptyList();
+
+    private static final DataSource DATA_SOURCE = (DataSource) Proxy.newProxyInstance(
+            DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+            (proxy, method, args) -> Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (conn, connMethod, connArgs) -> null));
+
+    /**
+     * The action taken for each row by a TestUpload.
+     */
+    private interface RowAction {
+
+        void apply(int rowNum) throws Exception;
+    }
+
+    /**
+     * A DoUpload whose conversion and writers run the given actions and count
+     * the rows written and the writers closed.
+     */
+    private static class TestUpload extends DoUpload {
+
+        private final RowAction conversion;
+        private final RowAction writing;
+        private final Set<Integer> written = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger writersClosed = new AtomicInteger();
+
+        TestUpload(RowAction conversion, RowAction writing) {
+            super(DATA_SOURCE);
+            this.conversion = conversion;
+            this.writing = writing;
+        }
+
+        @Override
+        public Optional<ConvertedRow> convertRow(SheetRow row,
+                List<ColumnMetaData> metaDataList) {
+            try {
+                conversion.apply(row.getRowNum());
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+            return Optional.of(new ConvertedRow(row.getRowNum(), 0));
+        }
+
+        @Override
+        RowWriter createWriter(Connection conn, String tableName,
+                List<ColumnMetaData> columns, UploadMetrics metrics) {
+            return new RowWriter() {
+                @Override
+                public void write(ConvertedRow row) throws SQLException {
+                    try {
+                        writing.apply(row.getRowNum());
+                    } catch (SQLException | RuntimeException ex) {
+                        throw ex;
+                    } catch (Exception ex) {
+                        throw new RuntimeException(ex);
+                    }
+                    written.add(row.getRowNum());
+                }
+
+                @Override
+                public void flush() {
+                }
+
+                @Override
+                public void close() {
+                    writersClosed.incrementAndGet();
+                }
+            };
+        }
+    }
+
+    private static UploadPipeline pipeline(TestUpload upload, int converterThreads,
+            int writerThreads, int queueCapacity) {
+        return new UploadPipeline(upload, DATA_SOURCE, "t", NO_COLUMNS,
+                converterThreads, writerThreads, queueCapacity, new UploadMetrics());
+    }
+
+    private static SheetRow row(int rowNum) {
+        return new SheetRow(rowNum, Collections.emptyList());
+    }
+
+    @Test(timeout = 10000)
+    public void testFullQueuesStopTheReader() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TestUpload upload = new TestUpload(rowNum -> {
+        }, rowNum -> release.await());
+        UploadPipeline pipeline = pipeline(upload, 1, 1, 2);
+        AtomicInteger submitted = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            try {
+                for (int i = 0; i < 100; i++) {
+                    pipeline.submit(row(i));
+                    submitted.incrementAndGet();
+                }
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        reader.start();
+        // The writer holds one row, the converted queue two, the converter one
+        // waiting to be queued and the sheet queue two.
+        while (submitted.get() < 6) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+        assertEquals(6, submitted.get());
+        assertTrue(reader.isAlive());
+        release.countDown();
+        reader.join();
+        pipeline.finish();
+        assertEquals(100, upload.written.size());
+        assertEquals(1, upload.writersClosed.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testErrorsAreReportedInRowOrder() throws Exception {
+        CountDownLatch rowOneStarted = new CountDownLatch(1);
+        CountDownLatch rowThreeFailed = new CountDownLatch(1);
+        TestUpload upload = new TestUpload(rowNum -> {
+            if (rowNum == 1) {
+                rowOneStarted.countDown();
+                rowThreeFailed.await();
+                Thread.sleep(100);
+                throw new IllegalArgumentException("row 1");
+            } else if (rowNum == 3) {
+                rowOneStarted.await();
+                rowThreeFailed.countDown();
+                throw new IllegalArgumentException("row 3");
+            }
+        }, rowNum -> {
+        });
+        List<String> logged = Collections.synchronizedList(new ArrayList<>());
+        AppenderSkeleton appender = new AppenderSkeleton() {
+            @Override
+            protected void append(LoggingEvent event) {
+                logged.add(event.getRenderedMessage());
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean requiresLayout() {
+                return false;
+            }
+        };
+        Logger logger = Logger.getLogger(UploadPipeline.class);
+        logger.addAppender(appender);
+        try (UploadPipeline pipeline = pipeline(upload, 4, 1, 10)) {
+            for (int i = 0; i < 4; i++) {
+                pipeline.submit(row(i));
+            }
+            pipeline.finish();
+            fail("Expected an exception");
+        } catch (Exception ex) {
+            assertEquals("Error at row 2 (2 errors)", ex.getMessage());
+            assertEquals("row 1", ex.getCause().getMessage());
+        } finally {
+            logger.removeAppender(appender);
+        }
+        assertEquals(2, logged.size());
+        assertEquals("Error at row 2", logged.get(0));
+        assertEquals("Error at row 4", logged.get(1));
+    }
+
+    @Test(timeout = 10000)
+    public void testWriterFailureStopsTheUpload() throws Exception {
+        TestUpload upload = new TestUpload(rowNum -> {
+        }, rowNum -> {
+            if (rowNum == 50) {
+                throw new SQLException("row 50");
+            }
+        });
+        UploadPipeline pipeline = pipeline(upload, 2, 2, 4);
+        Exception error = null;
+        int submitted = 0;
+        try {
+            for (; submitted < 100000; submitted++) {
+                pipeline.submit(row(submitted));
+            }
+            pipeline.finish();
+        } catch (Exception ex) {
+            error = ex;
+        }
+        assertNotNull(error);
+        assertEquals("Error at row 51 (1 errors)", error.getMessage());
+        assertTrue(error.getCause() instanceof SQLException);
+        assertTrue(submitted < 100000);
+        assertFalse(upload.written.contains(50));
+        assertEquals(2, upload.writersClosed.get());
+        pipeline.close();
+        assertEquals(2, upload.writersClosed.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testCloseDiscardsRowsNotWritten() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TestUpload upload = new TestUpload(rowNum -> {
+        }, rowNum -> {
+            writing.countDown();
+            release.await();
+        });
+        UploadPipeline pipeline = pipeline(upload, 1, 1, 100);
+        for (int i = 0; i < 50; i++) {
+            pipeline.submit(row(i));
+        }
+        writing.await();
+        // The writer is held in its first row until close has begun.
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        });
+        releaser.start();
+        pipeline.close();
+        releaser.join();
+        assertEquals(Collections.singleton(0), upload.written);
+        assertEquals(1, upload.writersClosed.get());
+    }
+
+}
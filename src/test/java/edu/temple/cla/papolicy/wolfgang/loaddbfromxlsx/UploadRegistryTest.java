@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.h2.jdbcx.JdbcDataSource;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Paul Wolfgang
+ */
+public class UploadRegistryTest {
+
+    @Test
+    public void testRecordedUploadIsLoaded() throws Exception {
+        Path file = Files.createTempFile("registry", ".properties");
+        try {
+            UploadRegistry registry = new UploadRegistry(file);
+            assertFalse(registry.isLoaded("db", "T", "abc", "123"));
+            registry.record("db", "T", "abc", "123");
+            assertTrue(registry.isLoaded("db", "T", "abc", "123"));
+            assertFalse(registry.isLoaded("db", "T", "abd", "123"));
+            assertFalse(registry.isLoaded("db", "T", "abc", "124"));
+            assertFalse(registry.isLoaded("db", "U", "abc", "123"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testRegistryIsPersistent() throws Exception {
+        Path file = Files.createTempFile("registry", ".properties");
+        try {
+            UploadRegistry registry = new UploadRegistry(file);
+            registry.record("db", "T", "abc", "123");
+            registry.record("db", "U", "def", "456");
+            registry.remove("db", "U");
+            UploadRegistry reloaded = new UploadRegistry(file);
+            assertTrue(reloaded.isLoaded("db", "T", "abc", "123"));
+            assertFalse(reloaded.isLoaded("db", "U", "def", "456"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testMissingFileIsEmpty() throws Exception {
+        Path dir = Files.createTempDirectory("registry");
+        Path file = dir.resolve("uploads.properties");
+        try {
+            UploadRegistry registry = new UploadRegistry(file);
+            assertFalse(registry.isLoaded("db", "T", "abc", "123"));
+            registry.record("db", "T", "abc", "123");
+            assertTrue(Files.exists(file));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testDatabasesAreSeparate() throws Exception {
+        Path file = Files.createTempFile("registry", ".properties");
+        try {
+            UploadRegistry registry = new UploadRegistry(file);
+            registry.record("db1", "T", "abc", "123");
+            assertFalse(registry.isLoaded("db2", "T", "abc", "123"));
+            registry.record("db2", "T", "abc", "123");
+            registry.record("db2", "TT", "abc", "123");
+            registry.remove("db1", "T");
+            assertFalse(registry.isLoaded("db1", "T", "abc", "123"));
+            assertTrue(registry.isLoaded("db2", "T", "abc", "123"));
+            registry.record("db1", "T", "abc", "123");
+            registry.remove("T");
+            UploadRegistry reloaded = new UploadRegistry(file);
+            assertFalse(reloaded.isLoaded("db1", "T", "abc", "123"));
+            assertFalse(reloaded.isLoaded("db2", "T", "abc", "123"));
+            assertTrue(reloaded.isLoaded("db2", "TT", "abc", "123"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testDatabaseOmitsUrlProperties() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:registry;MODE=MySQL");
+        try (Connection conn = dataSource.getConnection()) {
+            assertEquals("jdbc:h2:mem:registry#REGISTRY", UploadRegistry.database(conn));
+        }
+    }
+
+    @Test
+    public void testAlteredTableIsUploadedAgain() throws Exception {
+        Path file = Files.createTempFile("registry", ".properties");
+        Files.delete(file);
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:altered;MODE=MySQL");
+        TableMetadataCache cache = new TableMetadataCache(4, 10, TimeUnit.MINUTES);
+        byte[] csv = "id,name,extra\n1,a,x\n2,b,y\n".getBytes(StandardCharsets.UTF_8);
+        try (Connection conn = dataSource.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE items (id INTEGER, name VARCHAR(10))");
+            UploadRegistry registry = new UploadRegistry(file);
+            UploadSummary first = upload(dataSource, cache, registry, csv);
+            assertTrue(first.toString(), first.isSuccessful());
+            assertFalse(first.isDuplicate());
+            UploadSummary repeat = upload(dataSource, cache, registry, csv);
+            assertTrue(repeat.isDuplicate());
+            assertEquals(0, repeat.getRowsWritten());
+            stmt.executeUpdate("ALTER TABLE items ADD COLUMN extra VARCHAR(10)");
+            UploadSummary altered = upload(dataSource, cache, registry, csv);
+            assertTrue(altered.toString(), altered.isSuccessful());
+            assertFalse(altered.isDuplicate());
+            assertEquals(2, altered.getRowsWritten());
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT COUNT(*) FROM items WHERE extra IS NOT NULL")) {
+                rs.next();
+                assertEquals(2, rs.getInt(1));
+            }
+            assertTrue(upload(dataSource, cache, registry, csv).isDuplicate());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static UploadSummary upload(JdbcDataSource dataSource,
+            TableMetadataCache cache, UploadRegistry registry, byte[] csv) {
+        DoUpload doUpload = new DoUpload(dataSource);
+        doUpload.setMetadataCache(cache);
+        doUpload.setUploadRegistry(registry);
+        doUpload.setInputFormat(InputFormat.CSV);
+        return doUpload.run(new ByteArrayInputStream(csv), null, "items");
+    }
+
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2018, Temple University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * * All advertising materials features or use of this software must display 
+ *   the following  acknowledgement
+ *   This product includes software developed by Temple University
+ * * Neither the name of the copyright holder nor the names of its 
+ *   contributors may be used to endorse or promote products derived 
+ *   from this software without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.temple.cla.papolicy.wolfgang.loaddbfromxlsx;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.StringJoiner;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Generates synthetic xlsx workbooks for tests and benchmarks. The sheet has
+ * a header row followed by the requested number of data rows. Unless the
+ * column types are given they repeat in the order VARCHAR, INTEGER, DOUBLE,
+ * DATE, BIT, and every value is a function of its row and column, so the
+ * contents of a loaded table can be checked without keeping the workbook. The
+ * workbook is written with SXSSFWorkbook so large sheets can be generated in
+ * little memory.
+ *
+ * @author Paul Wolfgang
+ */
+public class WorkbookGenerator {
+
+    /**
+     * The types of the generated columns.
+     */
+    public enum ColumnType {
+        VARCHAR, INTEGER, DOUBLE, DATE, BIT
+    }
+
+    /**
+     * Excel serial number of 1970-01-01.
+     */
+    private static final int EXCEL_EPOCH = 25569;
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyz";
+
+    private final int rows;
+    private final ColumnType[] columnTypes;
+    private final int textLength;
+
+    /**
+     * Constructor.
+     *
+     * @param rows The number of data rows.
+     * @param columns The number of columns.
+     * @param textLength The length of the VARCHAR values.
+     */
+    public WorkbookGenerator(int rows, int columns, int textLength) {
+        this(rows, cycleTypes(columns), textLength);
+    }
+
+    /**
+     * Constructor for a sheet with the given column types.
+     *
+     * @param rows The number of data rows.
+     * @param columnTypes The type of each column.
+     * @param textLength The length of the VARCHAR values.
+     */
+    public WorkbookGenerator(int rows, ColumnType[] columnTypes, int textLength) {
+        this.rows = rows;
+        this.columnTypes = columnTypes.clone();
+        this.textLength = textLength;
+    }
+
+    private static ColumnType[] cycleTypes(int columns) {
+        ColumnType[] columnTypes = new ColumnType[columns];
+        for (int i = 0; i < columns; i++) {
+            columnTypes[i] = ColumnType.values()[i % ColumnType.values().length];
+        }
+        return columnTypes;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columnTypes.length;
+    }
+
+    public ColumnType getColumnType(int column) {
+        return columnTypes[column];
+    }
+
+    /**
+     * Get the header of a column. Names are lower case since H2 in MySQL mode
+     * reports unquoted identifiers in lower case, and columns are matched to
+     * headers by exact name.
+     *
+     * @param column The column index.
+     * @return The column name.
+     */
+    public String getColumnName(int column) {
+        return "c" + column + "_" + columnTypes[column].toString().toLowerCase();
+    }
+
+    /**
+     * Build the CREATE TABLE statement for a table that matches the sheet.
+     * BIT columns are declared TINYINT(1), which MySQL Connector/J reports as
+     * BIT.
+     *
+     * @param tableName The name of the table.
+     * @return The CREATE TABLE statement.
+     */
+    public String createTableStatement(String tableName) {
+        StringJoiner columns = new StringJoiner(", ", "(", ")");
+        for (int i = 0; i < columnTypes.length; i++) {
+            String sqlType;
+            switch (columnTypes[i]) {
+                case VARCHAR:
+                    sqlType = "VARCHAR(" + Math.max(textLength, 1) + ")";
+                    break;
+                case BIT:
+                    sqlType = "TINYINT(1)";
+                    break;
+                default:
+                    sqlType = columnTypes[i].toString();
+                    break;
+            }
+            columns.add(getColumnName(i) + " " + sqlType);
+        }
+        return "CREATE TABLE " + tableName + " " + columns.toString();
+    }
+
+    /**
+     * Generate the workbook.
+     *
+     * @param sheetName The name of the sheet.
+     * @return The contents of the xlsx file.
+     * @throws IOException If the workbook cannot be written.
+     */
+    public byte[] generate(String sheetName) throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook(100);
+        try {
+            SXSSFSheet sheet = wb.createSheet(sheetName);
+            Row header = sheet.createRow(0);
+            for (int column = 0; column < columnTypes.length; column++) {
+                header.createCell(column).setCellValue(getColumnName(column));
+            }
+            for (int row = 0; row < rows; row++) {
+                Row sheetRow = sheet.createRow(row + 1);
+                for (int column = 0; column < columnTypes.length; column++) {
+                    switch (columnTypes[column]) {
+                        case VARCHAR:
+                            sheetRow.createCell(column).setCellValue(text(row, column));
+                            break;
+                        case INTEGER:
+                            sheetRow.createCell(column).setCellValue(integer(row, column));
+                            break;
+                        case DOUBLE:
+                            sheetRow.createCell(column).setCellValue(decimal(row, column));
+                            break;
+                        case DATE:
+                            sheetRow.createCell(column).setCellValue(
+                                    EXCEL_EPOCH + epochDay(row, column));
+                            break;
+                        case BIT:
+                            sheetRow.createCell(column).setCellValue(bit(row, column));
+                            break;
+                    }
+                }
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            wb.write(out);
+            return out.toByteArray();
+        } finally {
+            wb.dispose();
+            wb.close();
+        }
+    }
+
+    /**
+     * The value of a VARCHAR cell.
+     *
+     * @param row The zero based data row.
+     * @param column The column index.
+     * @return The value.
+     */
+    public String text(int row, int column) {
+        StringBuilder text = new StringBuilder(textLength);
+        long seed = row * 31L + column;
+        for (int i = 0; i < textLength; i++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            text.append(LETTERS.charAt((int) ((seed >>> 33) % LETTERS.length())));
+        }
+        return text.toString();
+    }
+
+    /**
+     * The value of an INTEGER cell.
+     *
+     * @param row The zero based data row.
+     * @param column The column index.
+     * @return The value.
+     */
+    public long integer(int row, int column) {
+        return row * 7L - column;
+    }
+
+    /**
+     * The value of a DOUBLE cell. The fraction is a multiple of 1/4 so that it
+     * is represented exactly.
+     *
+     * @param row The zero based data row.
+     * @param column The column index.
+     * @return The value.
+     */
+    public double decimal(int row, int column) {
+        return row + 0.25 * (column % 4);
+    }
+
+    /**
+     * The value of a DATE cell as an epoch day.
+     *
+     * @param row The zero based data row.
+     * @param column The column index.
+     * @return The value.
+     */
+    public long epochDay(int row, int column) {
+        return (row + column) % 20000;
+    }
+
+    /**
+     * The value of a BIT cell.
+     *
+     * @param row The zero based data row.
+     * @param column The column index.
+     * @return The value.
+     */
+    public boolean bit(int row, int column) {
+        return (row + column) % 2 == 0;
+    }
+
+}